@@ -0,0 +1,41 @@
+package com.steffenwittig.emofaniInterfaceDemo.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.steffenwittig.emofaniInterfaceDemo.ThreadMode;
+
+/**
+ * Entry point of benchmarks.jar. Passes all arguments to JMH and adds the GC profiler (allocation rate per operation)
+ * unless another profiler was requested. On a JVM without virtual threads, the VIRTUAL mode of ThreadModeBenchmark
+ * is left out unless the mode is given with -p.
+ *
+ * Example: java -jar target/benchmarks.jar Encode -f 1
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+		if (!jmhArgs.contains("-prof") && !jmhArgs.contains("-h") && !jmhArgs.contains("-l")) {
+			jmhArgs.add("-prof");
+			jmhArgs.add("gc");
+		}
+		if (!ThreadMode.VIRTUAL.isAvailable() && !hasModeParameter(jmhArgs)) {
+			System.err.println("This JVM has no virtual threads, ThreadModeBenchmark only runs PLATFORM.");
+			jmhArgs.add("-p");
+			jmhArgs.add("mode=" + ThreadMode.PLATFORM);
+		}
+		org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+	}
+
+	private static boolean hasModeParameter(List<String> args) {
+		for (int i = 0; i + 1 < args.size(); i++) {
+			if (args.get(i).equals("-p") && args.get(i + 1).startsWith("mode=")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
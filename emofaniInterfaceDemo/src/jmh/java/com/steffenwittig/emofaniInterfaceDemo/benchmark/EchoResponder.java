@@ -0,0 +1,91 @@
+package com.steffenwittig.emofaniInterfaceDemo.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal stand-in for Emofani on the loopback interface: answers every message with an OK status containing its id
+ * and sends it to the source and port of the message. Doesn't interpret the data.
+ */
+public class EchoResponder implements AutoCloseable {
+
+	private static final byte[] OK = "status:OK;t:".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] PARAMS = ";arousal:0;pleasure:0;blush:0;gazex:0;gazey:0;gazez:250;talking:false;idle:false"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	private final DatagramChannel channel;
+	private final Thread thread;
+
+	public EchoResponder() throws IOException {
+		channel = DatagramChannel.open();
+		// hundreds of clients may send at the same moment, see ThreadModeBenchmark
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+		channel.bind(new InetSocketAddress("127.0.0.1", 0));
+		thread = new Thread(this::respond, "echo-responder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return the port the responder listens on
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+	}
+
+	private void respond() {
+		ByteBuffer in = ByteBuffer.allocateDirect(4096);
+		ByteBuffer out = ByteBuffer.allocateDirect(4096);
+		while (channel.isOpen()) {
+			try {
+				in.clear();
+				channel.receive(in);
+				in.flip();
+				int idStart = indexOf(in, "t:", 0) + 2;
+				int idEnd = indexOf(in, ";", idStart);
+				int portStart = indexOf(in, ";p:", idEnd) + 3;
+				int portEnd = indexOf(in, ";", portStart);
+				int port = 0;
+				for (int i = portStart; i < portEnd; i++) {
+					port = port * 10 + in.get(i) - '0';
+				}
+
+				out.clear();
+				out.put(OK);
+				for (int i = idStart; i < idEnd; i++) {
+					out.put(in.get(i));
+				}
+				out.put(PARAMS);
+				out.flip();
+				channel.send(out, new InetSocketAddress("127.0.0.1", port));
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				// keep answering
+			}
+		}
+	}
+
+	private static int indexOf(ByteBuffer buffer, String text, int from) {
+		outer: for (int i = from; i <= buffer.limit() - text.length(); i++) {
+			for (int j = 0; j < text.length(); j++) {
+				if (buffer.get(i + j) != text.charAt(j)) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return buffer.limit();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
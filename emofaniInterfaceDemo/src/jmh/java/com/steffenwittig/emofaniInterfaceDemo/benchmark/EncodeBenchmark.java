@@ -0,0 +1,70 @@
+package com.steffenwittig.emofaniInterfaceDemo.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.steffenwittig.emofaniInterfaceDemo.BinaryProtocol;
+import com.steffenwittig.emofaniInterfaceDemo.MessageEncoder;
+
+/**
+ * Encoding a message, as done for every message sent by the Communicator. Compares the String concatenation the
+ * Communicator used before with the MessageEncoder and the binary format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+	private MessageEncoder encoder;
+	private ByteBuffer binary;
+	private long id;
+	private int gaze;
+
+	@Setup
+	public void setup() {
+		encoder = new MessageEncoder();
+		encoder.setHeader("192.168.2.145", 11001);
+		binary = ByteBuffer.allocateDirect(MessageEncoder.CAPACITY);
+	}
+
+	@Benchmark
+	public byte[] stringConcatenation() {
+		String message = "t:" + System.currentTimeMillis() + ";";
+		message += "s:" + "192.168.2.145" + ";";
+		message += "p:" + 11001 + ";";
+		message += "d:" + "gazex" + "=" + String.valueOf(gaze++ & 0xff);
+		return message.getBytes();
+	}
+
+	@Benchmark
+	public ByteBuffer encoder() throws IOException {
+		return encoder.begin(id++).append("gazex", gaze++ & 0xff).finish();
+	}
+
+	@Benchmark
+	public ByteBuffer encoderBatch() throws IOException {
+		return encoder.begin(id++).append("expression", "happy%100").append("gazex", 130).append("gazey", -80)
+				.finish();
+	}
+
+	@Benchmark
+	public boolean binaryBatch() {
+		return BinaryProtocol.encodeMessage(binary, id++, 11001, "expression=happy%100,gazex=130,gazey=-80");
+	}
+
+}
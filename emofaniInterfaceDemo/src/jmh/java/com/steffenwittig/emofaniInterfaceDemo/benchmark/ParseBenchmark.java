@@ -0,0 +1,84 @@
+package com.steffenwittig.emofaniInterfaceDemo.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.steffenwittig.emofaniInterfaceDemo.BinaryProtocol;
+import com.steffenwittig.emofaniInterfaceDemo.FaceState;
+import com.steffenwittig.emofaniInterfaceDemo.StatusParser;
+
+/**
+ * Parsing a status message, as done for every message received from Emofani. Compares the split/Hashtable parsing
+ * MainWindow.update used before with the StatusParser and the decoder of the binary format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	private static final String STATUS = "status:OK;t:1424766709104;arousal:85;pleasure:12;blush:0;gazex:130;"
+			+ "gazey:-80;gazez:250;talking:false;idle:false";
+
+	private byte[] datagram;
+	private ByteBuffer buffer, binary;
+	private FaceState state;
+
+	@Setup
+	public void setup() {
+		// the receive buffer as it was filled by the Communicator
+		datagram = new byte[1024];
+		byte[] status = STATUS.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(status, 0, datagram, 0, status.length);
+		buffer = ByteBuffer.wrap(datagram, 0, status.length);
+		state = new FaceState();
+		binary = ByteBuffer.allocate(1024);
+		BinaryProtocol.encodeOk(binary, 1424766709104L, 85, 12, 0, 130, -80, 250, false, false);
+	}
+
+	@Benchmark
+	public void splitAndHashtable(Blackhole blackhole) {
+		String data = new String(datagram).trim();
+		Hashtable<String, String> keyValues = new Hashtable<String, String>();
+		for (String param : data.split(";")) {
+			String[] keyValue = param.split(":");
+			keyValues.put(keyValue[0], keyValue[1]);
+		}
+		blackhole.consume(Integer.parseInt(keyValues.get("arousal")));
+		blackhole.consume(Integer.parseInt(keyValues.get("pleasure")));
+		blackhole.consume(Integer.parseInt(keyValues.get("gazex")));
+		blackhole.consume(Integer.parseInt(keyValues.get("gazey")));
+		blackhole.consume(Integer.parseInt(keyValues.get("gazez")));
+		blackhole.consume(keyValues.get("talking").equalsIgnoreCase("true"));
+		blackhole.consume(keyValues.get("idle").equalsIgnoreCase("true"));
+	}
+
+	@Benchmark
+	public FaceState statusParser() {
+		StatusParser.parse(buffer, state);
+		return state;
+	}
+
+	@Benchmark
+	public FaceState binaryDecoder() {
+		BinaryProtocol.decodeStatus(binary, state);
+		return state;
+	}
+
+}
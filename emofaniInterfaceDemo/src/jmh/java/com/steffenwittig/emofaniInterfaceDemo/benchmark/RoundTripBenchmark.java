@@ -0,0 +1,68 @@
+package com.steffenwittig.emofaniInterfaceDemo.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.steffenwittig.emofaniInterfaceDemo.EmofaniClient;
+import com.steffenwittig.emofaniInterfaceDemo.FaceStatus;
+
+/**
+ * Sending a message and waiting for its status over the loopback interface, against an EchoResponder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+	private static final int PIPELINE = 16;
+
+	private EchoResponder responder;
+	private EmofaniClient client;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		responder = new EchoResponder();
+		client = EmofaniClient.builder().host("127.0.0.1").sendPort(responder.getPort()).receivePort(0)
+				.timeout(1000).build();
+		client.open();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		responder.close();
+	}
+
+	@Benchmark
+	public FaceStatus sendAndWait() throws Exception {
+		return client.sendAsync("gazex", "130").get();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIPELINE)
+	public void pipelined() throws Exception {
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[PIPELINE];
+		for (int i = 0; i < PIPELINE; i++) {
+			futures[i] = client.sendAsync("gazex", "130");
+		}
+		CompletableFuture.allOf(futures).get();
+	}
+
+}
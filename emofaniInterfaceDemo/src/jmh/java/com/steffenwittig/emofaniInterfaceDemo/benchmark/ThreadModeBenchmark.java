@@ -0,0 +1,96 @@
+package com.steffenwittig.emofaniInterfaceDemo.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.steffenwittig.emofaniInterfaceDemo.EmofaniClient;
+import com.steffenwittig.emofaniInterfaceDemo.ThreadMode;
+
+/**
+ * Many targets controlled in the blocking style: every target gets its own thread, which sends a few messages and
+ * waits for every answer before sending the next one, against an EchoResponder. Compares platform and virtual
+ * threads for the sending threads and the receiver threads of the clients. VIRTUAL needs Java 21 or newer; on an
+ * older JVM it would only measure platform threads again, so the benchmark refuses to run it there and Benchmarks
+ * leaves it out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+	private static final int MESSAGES = 4;
+
+	@Param({ "PLATFORM", "VIRTUAL" })
+	private ThreadMode mode;
+
+	@Param({ "64", "512" })
+	private int targets;
+
+	private EchoResponder responder;
+	private final List<EmofaniClient> clients = new ArrayList<EmofaniClient>();
+	private ThreadFactory threads;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		if (!mode.isAvailable()) {
+			throw new IllegalStateException("This JVM has no virtual threads, VIRTUAL needs Java 21 or newer");
+		}
+		responder = new EchoResponder();
+		for (int i = 0; i < targets; i++) {
+			EmofaniClient client = EmofaniClient.builder().host("127.0.0.1").sendPort(responder.getPort())
+					.receivePort(0).timeout(1000).threadMode(mode).build();
+			client.open();
+			clients.add(client);
+		}
+		threads = mode.newThreadFactory("benchmark-target");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		for (EmofaniClient client : clients) {
+			client.close();
+		}
+		clients.clear();
+		responder.close();
+	}
+
+	/**
+	 * Starts a thread per target and waits until all of them have received their answers
+	 */
+	@Benchmark
+	public void threadPerTarget() throws InterruptedException {
+		Thread[] running = new Thread[targets];
+		for (int i = 0; i < targets; i++) {
+			final EmofaniClient client = clients.get(i);
+			running[i] = threads.newThread(() -> {
+				for (int m = 0; m < MESSAGES; m++) {
+					client.send("gazex", String.valueOf(m));
+				}
+			});
+			running[i].start();
+		}
+		for (Thread thread : running) {
+			thread.join();
+		}
+	}
+
+}
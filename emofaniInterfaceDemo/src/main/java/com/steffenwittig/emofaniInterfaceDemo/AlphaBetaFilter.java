@@ -0,0 +1,76 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+/**
+ * Smooths a noisy one-dimensional measurement and estimates its velocity, so its value can be predicted a short time
+ * ahead. Alpha weights the measured position against the predicted one, beta corrects the velocity; smaller values
+ * smooth more but follow fast movements later.
+ */
+public class AlphaBetaFilter {
+
+	private final double alpha, beta;
+
+	private boolean initialized;
+	private double position, velocity;
+	private long time;
+
+	/**
+	 * @param alpha between 0 and 1
+	 * @param beta between 0 and 1, usually much smaller than alpha
+	 */
+	public AlphaBetaFilter(double alpha, double beta) {
+		if (alpha <= 0 || alpha > 1 || beta < 0 || beta > 1) {
+			throw new IllegalArgumentException("alpha and beta have to be between 0 and 1");
+		}
+		this.alpha = alpha;
+		this.beta = beta;
+	}
+
+	/**
+	 * Adds a measurement
+	 * @param measurement the measured position
+	 * @param nanos time of the measurement, from System.nanoTime()
+	 */
+	public void update(double measurement, long nanos) {
+		if (!initialized) {
+			position = measurement;
+			velocity = 0;
+			time = nanos;
+			initialized = true;
+			return;
+		}
+		double dt = (nanos - time) / 1e9;
+		if (dt <= 0) {
+			// several measurements at once, only correct the position
+			position += alpha * (measurement - position);
+			return;
+		}
+		double predicted = position + velocity * dt;
+		double residual = measurement - predicted;
+		position = predicted + alpha * residual;
+		velocity += beta * residual / dt;
+		time = nanos;
+	}
+
+	/**
+	 * @param nanos the time to predict the position at, from System.nanoTime()
+	 * @return the estimated position at that time
+	 */
+	public double predict(long nanos) {
+		return position + velocity * (nanos - time) / 1e9;
+	}
+
+	/**
+	 * @return true if there has been at least one measurement
+	 */
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	/**
+	 * @return time of the last measurement, from System.nanoTime()
+	 */
+	public long getTime() {
+		return time;
+	}
+
+}
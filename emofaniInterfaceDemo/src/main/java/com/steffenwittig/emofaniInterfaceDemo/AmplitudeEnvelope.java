@@ -0,0 +1,209 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The loudness of a sound over time: the RMS (root mean square) of the samples of every window of a few milliseconds,
+ * over all channels. It is computed once while reading the sound, a buffer at a time, so even long sounds never have
+ * to be in memory; only one float per window is kept.
+ *
+ * getMouth() turns the loudness at a frame position into the mouth openness for Emofani, relative to the loudest
+ * window, so quiet and loud recordings open the mouth equally wide. Windows quieter than the noise gate close it.
+ */
+public class AmplitudeEnvelope {
+
+	public static final int DEFAULT_WINDOW_MILLIS = 10;
+
+	/** windows below this part of the loudest window close the mouth */
+	public static final double NOISE_GATE = 0.1;
+
+	private final float[] levels;
+	private final int count;
+	private final int framesPerWindow;
+	private final float frameRate;
+	private final float peak;
+
+	private AmplitudeEnvelope(float[] levels, int count, int framesPerWindow, float frameRate) {
+		this.levels = levels;
+		this.count = count;
+		this.framesPerWindow = framesPerWindow;
+		this.frameRate = frameRate;
+		float max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, levels[i]);
+		}
+		this.peak = max;
+	}
+
+	/**
+	 * Reads a sound file resource and computes its envelope
+	 * @param resource name of the resource, e.g. "/message_hello.wav"
+	 * @param windowMillis length of a window in milliseconds
+	 * @return the envelope
+	 * @throws IOException if the resource can't be read or decoded
+	 */
+	public static AmplitudeEnvelope analyze(String resource, int windowMillis) throws IOException {
+		InputStream in = AmplitudeEnvelope.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IOException(resource + " not found");
+		}
+		try (AudioInputStream sound = AudioSystem.getAudioInputStream(new BufferedInputStream(in))) {
+			return analyze(sound, windowMillis);
+		} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+			throw new IOException(resource + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads a sound to its end and computes its envelope. Linear PCM with 8, 16, 24 or 32 bits is read as it is, other
+	 * encodings are converted to 16 bit PCM first.
+	 * @param sound the sound, it isn't closed
+	 * @param windowMillis length of a window in milliseconds
+	 * @return the envelope
+	 * @throws IOException if the sound can't be read
+	 * @throws IllegalArgumentException if the sound can't be converted to PCM
+	 */
+	public static AmplitudeEnvelope analyze(AudioInputStream sound, int windowMillis) throws IOException {
+		AudioFormat format = sound.getFormat();
+		if (!isReadable(format)) {
+			AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+					format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+			sound = AudioSystem.getAudioInputStream(pcm, sound);
+			format = pcm;
+		}
+
+		int bytesPerSample = format.getSampleSizeInBits() / 8;
+		int channels = format.getChannels();
+		int frameSize = format.getFrameSize();
+		boolean signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+		boolean bigEndian = format.isBigEndian();
+		double fullScale = Math.pow(2, format.getSampleSizeInBits() - 1);
+		int framesPerWindow = Math.max(1, Math.round(format.getFrameRate() * windowMillis / 1000f));
+
+		long frameLength = sound.getFrameLength();
+		float[] levels = new float[(frameLength > 0 && frameLength / framesPerWindow < Integer.MAX_VALUE - 1)
+				? (int) (frameLength / framesPerWindow) + 1 : 1024];
+		int count = 0;
+
+		// whole frames per read, so a frame never spans two buffers
+		byte[] buffer = new byte[Math.max(1, (1 << 16) / frameSize) * frameSize];
+		int buffered = 0, frames = 0;
+		double sum = 0;
+		for (int read; (read = sound.read(buffer, buffered, buffer.length - buffered)) >= 0;) {
+			buffered += read;
+			int end = buffered - buffered % frameSize;
+			for (int frame = 0; frame < end; frame += frameSize) {
+				for (int channel = 0; channel < channels; channel++) {
+					double sample = sample(buffer, frame + channel * bytesPerSample, bytesPerSample, signed, bigEndian)
+							/ fullScale;
+					sum += sample * sample;
+				}
+				if (++frames == framesPerWindow) {
+					if (count == levels.length) {
+						levels = Arrays.copyOf(levels, count * 2);
+					}
+					levels[count++] = (float) Math.sqrt(sum / (frames * channels));
+					frames = 0;
+					sum = 0;
+				}
+			}
+			System.arraycopy(buffer, end, buffer, 0, buffered - end);
+			buffered -= end;
+		}
+		if (frames > 0) {
+			if (count == levels.length) {
+				levels = Arrays.copyOf(levels, count + 1);
+			}
+			levels[count++] = (float) Math.sqrt(sum / (frames * channels));
+		}
+		return new AmplitudeEnvelope(levels, count, framesPerWindow, format.getFrameRate());
+	}
+
+	private static boolean isReadable(AudioFormat format) {
+		int bits = format.getSampleSizeInBits();
+		if (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED) {
+			return bits == 8 || bits == 16 || bits == 24 || bits == 32;
+		}
+		return format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED && bits == 8;
+	}
+
+	/**
+	 * @return the sample at the offset as a signed number
+	 */
+	private static int sample(byte[] buffer, int offset, int bytes, boolean signed, boolean bigEndian) {
+		if (bytes == 1) {
+			return signed ? buffer[offset] : (buffer[offset] & 0xff) - 128;
+		}
+		int value = 0;
+		for (int i = 0; i < bytes; i++) {
+			int b = buffer[bigEndian ? offset + i : offset + bytes - 1 - i];
+			// the most significant byte keeps its sign
+			value = (i == 0) ? b : (value << 8) | (b & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * @return number of windows
+	 */
+	public int getWindowCount() {
+		return count;
+	}
+
+	public int getFramesPerWindow() {
+		return framesPerWindow;
+	}
+
+	public float getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * @param window index of a window
+	 * @return the RMS of the window, 0 to 1 of full scale
+	 */
+	public float getLevel(int window) {
+		return levels[window];
+	}
+
+	/**
+	 * @return the RMS of the loudest window
+	 */
+	public float getPeak() {
+		return peak;
+	}
+
+	/**
+	 * @param millis time from the start of the sound
+	 * @return the frame played at that time
+	 */
+	public long toFrame(long millis) {
+		return (long) (millis * (double) frameRate / 1000);
+	}
+
+	/**
+	 * @param frame a frame position, e.g. Clip.getLongFramePosition()
+	 * @return the mouth openness for the window of the frame, 0 to 100. It is 0 after the end of the sound and for
+	 *         sounds that are silent throughout.
+	 */
+	public int getMouth(long frame) {
+		long window = frame / framesPerWindow;
+		if (frame < 0 || window >= count || peak == 0) {
+			return 0;
+		}
+		double relative = levels[(int) window] / peak;
+		if (relative <= NOISE_GATE) {
+			return 0;
+		}
+		return (int) Math.round(100 * (relative - NOISE_GATE) / (1 - NOISE_GATE));
+	}
+
+}
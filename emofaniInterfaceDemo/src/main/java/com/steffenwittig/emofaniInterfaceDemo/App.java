@@ -1,13 +1,33 @@
 package com.steffenwittig.emofaniInterfaceDemo;
 
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
- * Contains main method. Creates a MainWindow.
+ * Contains main method. Creates a MainWindow, or runs the headless CommandLineClient if the first argument is "--cli"
+ * or there is no display. "--server" runs the EmofaniServer stand-in, "--load" the LoadGenerator, "--gaze" the
+ * GazeTracker and "--replay" the SessionReplayer instead.
  * @author Steffen Wittig
  */
 public class App 
 {
-    public static void main( String[] args )
+    public static void main( String[] args ) throws IOException, InterruptedException
     {
-    	MainWindow.create();
+    	if (args.length > 0 && args[0].equals("--cli")) {
+    		CommandLineClient.main(Arrays.copyOfRange(args, 1, args.length));
+    	} else if (args.length > 0 && args[0].equals("--server")) {
+    		EmofaniServer.main(Arrays.copyOfRange(args, 1, args.length));
+    	} else if (args.length > 0 && args[0].equals("--load")) {
+    		LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+    	} else if (args.length > 0 && args[0].equals("--gaze")) {
+    		GazeTracker.main(Arrays.copyOfRange(args, 1, args.length));
+    	} else if (args.length > 0 && args[0].equals("--replay")) {
+    		SessionReplayer.main(Arrays.copyOfRange(args, 1, args.length));
+    	} else if (GraphicsEnvironment.isHeadless()) {
+    		CommandLineClient.main(args);
+    	} else {
+    		MainWindow.create();
+    	}
     }
 }
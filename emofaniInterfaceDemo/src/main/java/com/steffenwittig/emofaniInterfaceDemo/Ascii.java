@@ -0,0 +1,239 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes the ASCII text of messages and status messages in place, for MessageEncoder, StatusParser,
+ * BinaryProtocol and EmofaniServer. Ranges are given as start (inclusive) and end (exclusive) index, in absolute
+ * positions of a ByteBuffer or indexes of a CharSequence. Nothing is allocated, except by text() and ascii() and for
+ * the exceptions of text that doesn't fit or isn't ASCII.
+ */
+final class Ascii {
+
+	/** longest number that fits into a long without checking for overflow */
+	private static final int MAX_DIGITS = 18;
+
+	private Ascii() {
+		// only static methods
+	}
+
+	/**
+	 * @return the index of the first c in the range, end if there is none
+	 */
+	static int indexOf(ByteBuffer b, byte c, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (b.get(i) == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	static int indexOf(CharSequence chars, char c, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (chars.charAt(i) == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return true for a decimal integer with an optional sign and at most 18 digits, like int.Parse() accepts them
+	 */
+	static boolean isNumber(ByteBuffer b, int start, int end) {
+		if (start < end && (b.get(start) == '-' || b.get(start) == '+')) {
+			start++;
+		}
+		if (start == end || end - start > MAX_DIGITS) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			byte c = b.get(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isNumber(CharSequence chars, int start, int end) {
+		if (start < end && (chars.charAt(start) == '-' || chars.charAt(start) == '+')) {
+			start++;
+		}
+		if (start == end || end - start > MAX_DIGITS) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			char c = chars.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the value of a number that has been checked with isNumber(), 0 if it isn't one
+	 */
+	static long parseNumber(ByteBuffer b, int start, int end) {
+		if (!isNumber(b, start, end)) {
+			return 0;
+		}
+		boolean negative = b.get(start) == '-';
+		if (negative || b.get(start) == '+') {
+			start++;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + (b.get(i) - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	static long parseNumber(CharSequence chars, int start, int end) {
+		if (!isNumber(chars, start, end)) {
+			return 0;
+		}
+		boolean negative = chars.charAt(start) == '-';
+		if (negative || chars.charAt(start) == '+') {
+			start++;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			value = value * 10 + (chars.charAt(i) - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	static boolean equal(ByteBuffer b, int start, int end, byte[] text) {
+		if (end - start != text.length) {
+			return false;
+		}
+		for (int i = 0; i < text.length; i++) {
+			if (b.get(start + i) != text[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean equal(CharSequence chars, int start, int end, String text) {
+		if (end - start != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (chars.charAt(start + i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares with text in lower case, the range may contain upper case letters
+	 */
+	static boolean equalIgnoreCase(ByteBuffer b, int start, int end, byte[] lowerCaseText) {
+		if (end - start != lowerCaseText.length) {
+			return false;
+		}
+		for (int i = 0; i < lowerCaseText.length; i++) {
+			if (toLowerCase(b.get(start + i)) != lowerCaseText[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean equalIgnoreCase(CharSequence chars, int start, int end, String lowerCaseText) {
+		if (end - start != lowerCaseText.length()) {
+			return false;
+		}
+		for (int i = 0; i < lowerCaseText.length(); i++) {
+			if (toLowerCase(chars.charAt(start + i)) != lowerCaseText.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int toLowerCase(int c) {
+		return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+	}
+
+	/**
+	 * @throws IOException if the buffer has less than the given number of bytes left
+	 */
+	static void ensureRemaining(ByteBuffer out, int bytes) throws IOException {
+		if (out.remaining() < bytes) {
+			throw new IOException("The message is longer than " + out.capacity() + " bytes");
+		}
+	}
+
+	/**
+	 * Writes the chars as bytes at the position of the buffer
+	 * @throws CharConversionException if a char isn't ASCII, the buffer contains the chars before it then
+	 * @throws IOException if the chars don't fit into the buffer, nothing is written then
+	 */
+	static void putChars(ByteBuffer out, CharSequence chars) throws IOException {
+		int length = chars.length();
+		ensureRemaining(out, length);
+		for (int i = 0; i < length; i++) {
+			char c = chars.charAt(i);
+			if (c >= 0x80) {
+				throw new CharConversionException("'" + c + "' is not an ASCII character");
+			}
+			out.put((byte) c);
+		}
+	}
+
+	/**
+	 * Writes the decimal representation of a number at the position of the buffer. Digits are computed on the
+	 * negative value, so Long.MIN_VALUE works as well.
+	 * @throws IOException if the number doesn't fit into the buffer, nothing is written then
+	 */
+	static void putNumber(ByteBuffer out, long value) throws IOException {
+		long negative = (value < 0) ? value : -value;
+		int digits = 1;
+		for (long rest = negative / 10; rest != 0; rest /= 10) {
+			digits++;
+		}
+
+		ensureRemaining(out, (value < 0) ? digits + 1 : digits);
+		if (value < 0) {
+			out.put((byte) '-');
+		}
+
+		int position = out.position() + digits;
+		out.position(position);
+		for (int i = 1; i <= digits; i++) {
+			out.put(position - i, (byte) ('0' - (negative % 10)));
+			negative /= 10;
+		}
+	}
+
+	/**
+	 * @return the range as a String, e.g. for an error message
+	 */
+	static String text(ByteBuffer b, int start, int end) {
+		StringBuilder text = new StringBuilder(Math.max(0, end - start));
+		for (int i = start; i < end; i++) {
+			text.append((char) (b.get(i) & 0xff));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return the chars of an ASCII string as bytes, to compare with equal()
+	 */
+	static byte[] ascii(String text) {
+		byte[] bytes = new byte[text.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) text.charAt(i);
+		}
+		return bytes;
+	}
+
+}
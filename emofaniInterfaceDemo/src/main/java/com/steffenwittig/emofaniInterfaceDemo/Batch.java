@@ -0,0 +1,85 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects several parameters and sends them to Emofani in a single message. Emofani applies all parameters of a
+ * batch in the same frame and answers with one status message. Setting a parameter twice keeps the latest value.
+ *
+ * Example: client.batch().set("gazex", 130).set("gazey", -80).send();
+ */
+public class Batch {
+
+	private final EmofaniClient client;
+	private final Map<String, String> params = new LinkedHashMap<String, String>();
+
+	Batch(EmofaniClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Adds a parameter to the batch
+	 * @param param The name of the parameter, e.g. "expression"
+	 * @param value The value of the parameter, e.g. "happy%50"
+	 * @return this batch
+	 */
+	public Batch set(String param, String value) {
+		params.put(param, value);
+		return this;
+	}
+
+	/**
+	 * Adds a numeric parameter to the batch
+	 * @param param The name of the parameter, e.g. "gazex"
+	 * @param value The value of the parameter
+	 * @return this batch
+	 */
+	public Batch set(String param, int value) {
+		return set(param, String.valueOf(value));
+	}
+
+	/**
+	 * @return true if no parameter has been added yet
+	 */
+	public boolean isEmpty() {
+		return params.isEmpty();
+	}
+
+	/**
+	 * Sends the batch and waits for the answer.
+	 * @return the status Emofani answered with, null if the batch is empty, Emofani didn't answer in time or the
+	 *         message couldn't be sent
+	 */
+	public FaceStatus send() {
+		if (isEmpty()) {
+			return null;
+		}
+		return client.await(sendAsync());
+	}
+
+	/**
+	 * Sends the batch without waiting for the answer.
+	 * @return a future that completes with the status Emofani answered with
+	 */
+	public CompletableFuture<FaceStatus> sendAsync() {
+		return client.sendData(toString());
+	}
+
+	/**
+	 * @return the data part of the message, e.g. "gazex=130,gazey=-80"
+	 */
+	@Override
+	public String toString() {
+		StringBuilder data = new StringBuilder();
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			if (data.length() > 0) {
+				data.append(',');
+			}
+			data.append(param.getKey()).append('=').append(param.getValue());
+		}
+		return data.toString();
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the compact binary variant of Emofani's messages. All numbers are big endian.
+ *
+ * Message (13 bytes + 5 per parameter):
+ *
+ * [magic 0xEF][version 1][id, 8 bytes][port to answer to, 2 bytes][count, 1 byte] and count times
+ * [parameter id, 1 byte][value, 4 bytes fixed point with 16 fractional bits]
+ *
+ * Status message (24 bytes for OK):
+ *
+ * [magic 0xEF][version 1][status, 0 = OK, 1 = ERROR][id, 8 bytes, -1 if it doesn't answer a message] followed by
+ * arousal, pleasure, blush, gazex, gazey and gazez as 2 byte integers and [flags, 1 = talking, 2 = idle] for OK, or by
+ * [length, 2 bytes][error as ASCII] for ERROR.
+ *
+ * Booleans are sent as 0 and 1, an expression as the parameter id EXPRESSION plus the index of the expression with
+ * its intensity as value. The status is sent to the port in the message at the address the message came from, or on
+ * the TCP connection. The magic byte is never the first byte of a text message, so both formats can arrive on the
+ * same port.
+ *
+ * A client asks for the binary format with the text message HANDSHAKE. Emofani versions that don't know it answer
+ * with an error, and the client keeps using the text format.
+ */
+public class BinaryProtocol {
+
+	public static final byte MAGIC = (byte) 0xEF;
+	public static final byte VERSION = 1;
+
+	/** data of the text message that asks Emofani to accept binary messages */
+	public static final String HANDSHAKE = "protocol=binary1";
+
+	/** the value 1 in fixed point */
+	public static final int ONE = 1 << 16;
+
+	public static final int MESSAGE_HEADER_LENGTH = 13, PARAMETER_LENGTH = 5, OK_STATUS_LENGTH = 24;
+	public static final byte STATUS_OK = 0, STATUS_ERROR = 1;
+	public static final int FLAG_TALKING = 1, FLAG_IDLE = 2;
+
+	/** parameter ids, EXPRESSION is followed by the ids of the other expressions */
+	public static final byte AROUSAL = 1, PLEASURE = 2, BLUSH = 3, GAZE_X = 4, GAZE_Y = 5, GAZE_Z = 6, TALKING = 7,
+			IDLE = 8, MOUTH = 9, EXPRESSION = 16;
+
+	/** names of the parameters, indexed by their id */
+	private static final String[] PARAMETERS = { null, "arousal", "pleasure", "blush", "gazex", "gazey", "gazez",
+			"talking", "idle", "mouth" };
+
+	/** expressions in the order of their ids, as defined in FaceAnimator.Awake() */
+	static final String[] EXPRESSIONS = { "neutral", "happy", "sad", "attentive", "sleepy", "frustrated", "excited",
+			"relaxed" };
+
+	private BinaryProtocol() {
+		// only static methods
+	}
+
+	/**
+	 * @param buffer a received message or status message
+	 * @return true if the bytes from the position on are in the binary format
+	 */
+	public static boolean isBinary(ByteBuffer buffer) {
+		return buffer.remaining() >= 2 && buffer.get(buffer.position()) == MAGIC;
+	}
+
+	/**
+	 * Encodes a message. Nothing is allocated.
+	 * @param out receives the message, it is cleared first and flipped afterwards
+	 * @param id the id (t) of the message
+	 * @param port port where Emofani should send the status message to
+	 * @param data one or more comma separated key=value pairs, e.g. "expression=happy%50,gazex=130"
+	 * @return false if the data contains something that can't be encoded, e.g. an unknown parameter or a malformed
+	 *         value. It has to be sent in the text format then, which also gets the proper error from Emofani.
+	 */
+	public static boolean encodeMessage(ByteBuffer out, long id, int port, CharSequence data) {
+		out.clear();
+		out.put(MAGIC).put(VERSION).putLong(id).putShort((short) port).put((byte) 0);
+		int count = 0;
+		int end = data.length();
+		for (int i = 0; i <= end;) {
+			int pairEnd = Ascii.indexOf(data, ',', i, end);
+			int separator = Ascii.indexOf(data, '=', i, pairEnd);
+			if (separator == pairEnd || count == 255 || out.remaining() < PARAMETER_LENGTH
+					|| !putParameter(out, data, i, separator, separator + 1, pairEnd)) {
+				return false;
+			}
+			count++;
+			i = pairEnd + 1;
+		}
+		out.put(MESSAGE_HEADER_LENGTH - 1, (byte) count);
+		out.flip();
+		return true;
+	}
+
+	private static boolean putParameter(ByteBuffer out, CharSequence data, int keyStart, int keyEnd, int start,
+			int end) {
+		for (byte id = AROUSAL; id < PARAMETERS.length; id++) {
+			if (!Ascii.equal(data, keyStart, keyEnd, PARAMETERS[id])) {
+				continue;
+			}
+			int value;
+			if (id == TALKING || id == IDLE) {
+				if (Ascii.equalIgnoreCase(data, start, end, "true")) {
+					value = ONE;
+				} else if (Ascii.equalIgnoreCase(data, start, end, "false")) {
+					value = 0;
+				} else {
+					return false;
+				}
+			} else if (isFixedPoint(data, start, end)) {
+				value = (int) Ascii.parseNumber(data, start, end) * ONE;
+			} else {
+				return false;
+			}
+			out.put(id).putInt(value);
+			return true;
+		}
+
+		if (Ascii.equal(data, keyStart, keyEnd, "expression")) {
+			int separator = Ascii.indexOf(data, '%', start, end);
+			if (!isFixedPoint(data, separator + 1, end)) {
+				return false;
+			}
+			for (int i = 0; i < EXPRESSIONS.length; i++) {
+				if (Ascii.equal(data, start, separator, EXPRESSIONS[i])) {
+					out.put((byte) (EXPRESSION + i)).putInt((int) Ascii.parseNumber(data, separator + 1, end) * ONE);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param id a parameter id
+	 * @return the name of the parameter, e.g. "gazex", or null for unknown ids and expressions
+	 */
+	public static String getParameterName(byte id) {
+		return (id > 0 && id < PARAMETERS.length) ? PARAMETERS[id] : null;
+	}
+
+	/**
+	 * @param id a parameter id
+	 * @return the name of the expression, e.g. "happy", or null if the id isn't an expression
+	 */
+	public static String getExpressionName(byte id) {
+		return (id >= EXPRESSION && id < EXPRESSION + EXPRESSIONS.length) ? EXPRESSIONS[id - EXPRESSION] : null;
+	}
+
+	/**
+	 * Encodes an OK status message
+	 * @param out receives the status message, it is cleared first and flipped afterwards
+	 * @param id id of the answered message or FaceStatus.NO_ID
+	 */
+	public static void encodeOk(ByteBuffer out, long id, int arousal, int pleasure, int blush, int gazeX, int gazeY,
+			int gazeZ, boolean talking, boolean idle) {
+		out.clear();
+		out.put(MAGIC).put(VERSION).put(STATUS_OK).putLong(id);
+		out.putShort(clamp(arousal)).putShort(clamp(pleasure)).putShort(clamp(blush));
+		out.putShort(clamp(gazeX)).putShort(clamp(gazeY)).putShort(clamp(gazeZ));
+		out.put((byte) ((talking ? FLAG_TALKING : 0) | (idle ? FLAG_IDLE : 0)));
+		out.flip();
+	}
+
+	/**
+	 * Encodes an error status message
+	 * @param out receives the status message, it is cleared first and flipped afterwards. Long errors are cut off.
+	 * @param id id of the answered message or FaceStatus.NO_ID
+	 * @param error the error description
+	 */
+	public static void encodeError(ByteBuffer out, long id, String error) {
+		out.clear();
+		out.put(MAGIC).put(VERSION).put(STATUS_ERROR).putLong(id);
+		int length = Math.min(error.length(), Math.min(FaceState.MAX_ERROR_LENGTH, out.remaining() - 2));
+		out.putShort((short) length);
+		for (int i = 0; i < length; i++) {
+			out.put((byte) error.charAt(i));
+		}
+		out.flip();
+	}
+
+	/**
+	 * Decodes a status message, the counterpart of StatusParser.parse() for the binary format. Position and limit are
+	 * not changed.
+	 * @param buffer contains the status message
+	 * @param state receives the parameters, it is cleared first
+	 * @return true if the message is a complete status message
+	 */
+	public static boolean decodeStatus(ByteBuffer buffer, FaceState state) {
+		state.clear();
+		int i = buffer.position(), length = buffer.remaining();
+		if (length < 11 || buffer.get(i) != MAGIC || buffer.get(i + 1) != VERSION) {
+			return false;
+		}
+		state.ok = buffer.get(i + 2) == STATUS_OK;
+		state.id = buffer.getLong(i + 3);
+		state.fields = FaceState.STATUS | ((state.id != FaceStatus.NO_ID) ? FaceState.ID : 0);
+		if (state.ok) {
+			if (length < OK_STATUS_LENGTH) {
+				return false;
+			}
+			state.arousal = buffer.getShort(i + 11);
+			state.pleasure = buffer.getShort(i + 13);
+			state.blush = buffer.getShort(i + 15);
+			state.gazeX = buffer.getShort(i + 17);
+			state.gazeY = buffer.getShort(i + 19);
+			state.gazeZ = buffer.getShort(i + 21);
+			int flags = buffer.get(i + 23);
+			state.talking = (flags & FLAG_TALKING) != 0;
+			state.idle = (flags & FLAG_IDLE) != 0;
+			state.fields = FaceState.OK_FIELDS | (state.fields & FaceState.ID);
+		} else {
+			if (length < 13) {
+				return false;
+			}
+			int errorLength = Math.min(buffer.getShort(i + 11) & 0xffff, Math.min(length - 13,
+					FaceState.MAX_ERROR_LENGTH));
+			for (int j = 0; j < errorLength; j++) {
+				state.error[j] = buffer.get(i + 13 + j);
+			}
+			state.errorLength = errorLength;
+			state.fields |= FaceState.ERROR;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a decoded status message in the text format, e.g. for the log
+	 * @param state a decoded status message
+	 * @return the status message as Emofani would have sent it as text
+	 */
+	public static String toText(FaceState state) {
+		return new FaceStatus(state, null).getData();
+	}
+
+	private static short clamp(int value) {
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+	}
+
+	/**
+	 * @return true for an integer that fits into the integer part of a fixed point value
+	 */
+	private static boolean isFixedPoint(CharSequence chars, int start, int end) {
+		return Ascii.isNumber(chars, start, end) && Math.abs(Ascii.parseNumber(chars, start, end)) < Short.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,256 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the traffic of one or more EmofaniClients, see Builder.metrics(). The counters are updated without locks by
+ * the sending threads and the receiver thread, so they don't slow down sending. Round trip times are kept for the
+ * last 1024 answers; their statistics are only computed when they are read.
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+	/** name the Communicator registers its metrics with */
+	public static final String OBJECT_NAME = "com.steffenwittig.emofani:type=Communicator";
+
+	private static final String[] PARAMETERS = { "arousal", "pleasure", "blush", "gazex", "gazey", "gazez",
+			"expression", "talking", "idle", "mouth" };
+	private static final String OTHER = "other";
+
+	/** number of round trip times in the sliding window, a power of 2 */
+	private static final int WINDOW = 1024;
+
+	// the last counter is for unknown parameters
+	private final LongAdder[] sendCounts = new LongAdder[PARAMETERS.length + 1];
+	private final LongAdder messagesSent = new LongAdder(), errorAnswers = new LongAdder(),
+			timeouts = new LongAdder(), retransmits = new LongAdder(), abandoned = new LongAdder(),
+			suppressed = new LongAdder(), failures = new LongAdder(), parseErrors = new LongAdder(),
+			bytesSent = new LongAdder(), bytesReceived = new LongAdder(), inFlight = new LongAdder();
+
+	private final AtomicLongArray roundTrips = new AtomicLongArray(WINDOW);
+	private final AtomicLong roundTripCount = new AtomicLong();
+
+	public ClientMetrics() {
+		for (int i = 0; i < sendCounts.length; i++) {
+			sendCounts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Counts a message that has been written to the channel
+	 * @param data the data part of the message
+	 * @param bytes length of the whole message
+	 */
+	void sent(String data, int bytes) {
+		messagesSent.increment();
+		bytesSent.add(bytes);
+		inFlight.increment();
+
+		// count the keys of the key=value pairs without splitting the data
+		for (int start = 0; start < data.length();) {
+			int end = data.indexOf(',', start);
+			if (end < 0) {
+				end = data.length();
+			}
+			int separator = data.indexOf('=', start);
+			int keyEnd = (separator >= 0 && separator < end) ? separator : end;
+			sendCounts[parameterIndex(data, start, keyEnd)].increment();
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Counts the outcome of a sent message
+	 * @param roundTrip nanoseconds since the message was sent
+	 * @param status the answer or null if the message failed
+	 * @param error the reason the message failed or null if it was answered
+	 */
+	void completed(long roundTrip, FaceStatus status, Throwable error) {
+		inFlight.decrement();
+		if (error instanceof TimeoutException) {
+			timeouts.increment();
+		} else if (error instanceof CancellationException) {
+			abandoned.increment();
+		} else if (error != null) {
+			failures.increment();
+		} else {
+			roundTrips.set((int) (roundTripCount.getAndIncrement() & (WINDOW - 1)), roundTrip);
+			if (!status.isOk()) {
+				errorAnswers.increment();
+			}
+		}
+	}
+
+	/**
+	 * Counts a message that was sent again because it wasn't answered
+	 * @param bytes length of the retransmitted message
+	 */
+	void retransmitted(int bytes) {
+		retransmits.increment();
+		bytesSent.add(bytes);
+	}
+
+	/**
+	 * Counts a message that wasn't sent because the face already had its values
+	 */
+	void suppressed() {
+		suppressed.increment();
+	}
+
+	/**
+	 * Counts a message that couldn't be sent
+	 */
+	void failed() {
+		failures.increment();
+	}
+
+	/**
+	 * Counts a received datagram
+	 * @param bytes its length
+	 * @param valid false if it wasn't a status message or contained malformed values
+	 */
+	void received(int bytes, boolean valid) {
+		bytesReceived.add(bytes);
+		if (!valid) {
+			parseErrors.increment();
+		}
+	}
+
+	@Override
+	public long getMessagesSent() {
+		return messagesSent.sum();
+	}
+
+	@Override
+	public Map<String, Long> getSendCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < PARAMETERS.length; i++) {
+			counts.put(PARAMETERS[i], sendCounts[i].sum());
+		}
+		counts.put(OTHER, sendCounts[PARAMETERS.length].sum());
+		return counts;
+	}
+
+	@Override
+	public long getErrorAnswers() {
+		return errorAnswers.sum();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getRetransmits() {
+		return retransmits.sum();
+	}
+
+	@Override
+	public long getAbandoned() {
+		return abandoned.sum();
+	}
+
+	@Override
+	public long getSuppressed() {
+		return suppressed.sum();
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getParseErrors() {
+		return parseErrors.sum();
+	}
+
+	@Override
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	@Override
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+
+	@Override
+	public long getInFlight() {
+		return inFlight.sum();
+	}
+
+	@Override
+	public int getRoundTripSamples() {
+		return (int) Math.min(roundTripCount.get(), WINDOW);
+	}
+
+	@Override
+	public double getRoundTripMinMillis() {
+		long[] window = roundTrips();
+		return (window.length == 0) ? 0 : window[0] / 1e6;
+	}
+
+	@Override
+	public double getRoundTripMeanMillis() {
+		long[] window = roundTrips();
+		long sum = 0;
+		for (long roundTrip : window) {
+			sum += roundTrip;
+		}
+		return (window.length == 0) ? 0 : sum / 1e6 / window.length;
+	}
+
+	@Override
+	public double getRoundTripP99Millis() {
+		long[] window = roundTrips();
+		return (window.length == 0) ? 0 : window[(int) Math.ceil(window.length * 0.99) - 1] / 1e6;
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder count : sendCounts) {
+			count.reset();
+		}
+		messagesSent.reset();
+		errorAnswers.reset();
+		timeouts.reset();
+		retransmits.reset();
+		abandoned.reset();
+		suppressed.reset();
+		failures.reset();
+		parseErrors.reset();
+		bytesSent.reset();
+		bytesReceived.reset();
+		roundTripCount.set(0);
+	}
+
+	/**
+	 * @return a sorted copy of the round trip times in the window
+	 */
+	private long[] roundTrips() {
+		long[] window = new long[getRoundTripSamples()];
+		for (int i = 0; i < window.length; i++) {
+			window[i] = roundTrips.get(i);
+		}
+		Arrays.sort(window);
+		return window;
+	}
+
+	private static int parameterIndex(String data, int start, int end) {
+		for (int i = 0; i < PARAMETERS.length; i++) {
+			if (end - start == PARAMETERS[i].length() && data.startsWith(PARAMETERS[i], start)) {
+				return i;
+			}
+		}
+		return PARAMETERS.length;
+	}
+
+}
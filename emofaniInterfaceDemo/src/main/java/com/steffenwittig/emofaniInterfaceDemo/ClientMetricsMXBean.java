@@ -0,0 +1,90 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.Map;
+
+/**
+ * Traffic and latency of an EmofaniClient, as shown by JMX tools like JConsole or VisualVM. The Communicator registers
+ * its metrics as "com.steffenwittig.emofani:type=Communicator".
+ */
+public interface ClientMetricsMXBean {
+
+	/**
+	 * @return number of sent messages
+	 */
+	long getMessagesSent();
+
+	/**
+	 * @return number of times each parameter was sent, a batch counts once for each of its parameters
+	 */
+	Map<String, Long> getSendCounts();
+
+	/**
+	 * @return number of messages Emofani answered with status:ERROR
+	 */
+	long getErrorAnswers();
+
+	/**
+	 * @return number of messages that weren't answered within the timeout
+	 */
+	long getTimeouts();
+
+	/**
+	 * @return number of times an unanswered message was sent again
+	 */
+	long getRetransmits();
+
+	/**
+	 * @return number of unanswered messages that were given up because all their parameters had newer values
+	 */
+	long getAbandoned();
+
+	/**
+	 * @return number of messages that weren't sent because they wouldn't have changed the state of the face
+	 */
+	long getSuppressed();
+
+	/**
+	 * @return number of messages that couldn't be sent or were pending when the client was closed
+	 */
+	long getFailures();
+
+	/**
+	 * @return number of received messages that weren't valid status messages
+	 */
+	long getParseErrors();
+
+	long getBytesSent();
+
+	long getBytesReceived();
+
+	/**
+	 * @return number of sent messages that haven't been answered yet
+	 */
+	long getInFlight();
+
+	/**
+	 * @return number of round trip times the following statistics are based on, at most the size of the window
+	 */
+	int getRoundTripSamples();
+
+	/**
+	 * @return shortest round trip time of the recent answers in milliseconds
+	 */
+	double getRoundTripMinMillis();
+
+	/**
+	 * @return mean round trip time of the recent answers in milliseconds
+	 */
+	double getRoundTripMeanMillis();
+
+	/**
+	 * @return 99th percentile of the round trip times of the recent answers in milliseconds
+	 */
+	double getRoundTripP99Millis();
+
+	/**
+	 * Sets all counters to 0 and forgets the round trip times. The in-flight count isn't changed.
+	 */
+	void reset();
+
+}
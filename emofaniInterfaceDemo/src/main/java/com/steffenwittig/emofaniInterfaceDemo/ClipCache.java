@@ -0,0 +1,203 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Keeps sound file resources decoded and opened as Clips, so they can be started without reading the file again.
+ * Clips can be loaded in the background ahead of time with preload(). The cache holds a limited number of clips; the
+ * least recently used clip is removed when another one has to be added, and closed once it has stopped playing.
+ * Sounds longer than MAX_CLIP_SECONDS are too big to be kept decoded in memory; they aren't preloaded and should be
+ * streamed from the resource instead, see isStreamed(). That decision is made once per resource and kept.
+ */
+public class ClipCache {
+
+	public static final int DEFAULT_CAPACITY = 16;
+
+	/** sounds that are longer are streamed instead of being loaded as a clip */
+	public static final double MAX_CLIP_SECONDS = 30;
+
+	private final MessageLog log;
+	private final Map<String, Clip> clips;
+	private final Map<String, Boolean> streamed = new ConcurrentHashMap<String, Boolean>();
+	private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "emofani-clips");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param capacity maximum number of open clips
+	 * @param log receives errors of preloading, may be null
+	 */
+	public ClipCache(final int capacity, MessageLog log) {
+		this.log = log;
+		this.clips = new LinkedHashMap<String, Clip>(capacity, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Clip> eldest) {
+				if (size() > capacity) {
+					closeWhenStopped(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Loads clips on a background thread. Clips that are already cached and sounds that are streamed are skipped.
+	 * @param resources names of the resources, e.g. "/message_hello.wav"
+	 */
+	public void preload(Collection<String> resources) {
+		for (final String resource : resources) {
+			loader.execute(() -> {
+				try {
+					if (!isStreamed(resource)) {
+						get(resource);
+					}
+				} catch (IOException e) {
+					if (log != null) {
+						log.print("Error: " + e.getMessage());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the clip of a resource. It is loaded on the calling thread if it isn't cached yet.
+	 * @param resource name of the resource, e.g. "/message_hello.wav"
+	 * @return the open clip, it may have been played before
+	 * @throws IOException if the resource can't be read or played
+	 */
+	public Clip get(String resource) throws IOException {
+		synchronized (this) {
+			Clip clip = clips.get(resource);
+			if (clip != null) {
+				return clip;
+			}
+		}
+
+		// decoding takes a while, other clips can be taken from the cache in the meantime
+		Clip clip = load(resource);
+		synchronized (this) {
+			Clip loaded = clips.get(resource);
+			if (loaded != null) {
+				clip.close();
+				return loaded;
+			}
+			clips.put(resource, clip);
+			return clip;
+		}
+	}
+
+	/**
+	 * @param resource name of the resource
+	 * @return true if the clip of the resource is loaded
+	 */
+	public synchronized boolean contains(String resource) {
+		return clips.containsKey(resource);
+	}
+
+	/**
+	 * @return number of loaded clips
+	 */
+	public synchronized int size() {
+		return clips.size();
+	}
+
+	/**
+	 * Closes all clips
+	 */
+	public synchronized void clear() {
+		for (Clip clip : clips.values()) {
+			clip.close();
+		}
+		clips.clear();
+	}
+
+	/**
+	 * Closes a clip that has been removed from the cache. A clip that is still playing, e.g. a long sound of a
+	 * scenario, is closed by the loader thread when it stops, so it isn't cut off.
+	 */
+	private void closeWhenStopped(final Clip clip) {
+		clip.addLineListener(new LineListener() {
+			@Override
+			public void update(LineEvent event) {
+				if (event.getType() == LineEvent.Type.STOP) {
+					clip.removeLineListener(this);
+					loader.execute(clip::close);
+				}
+			}
+		});
+		// the clip may have stopped before the listener was added
+		if (!clip.isRunning()) {
+			clip.close();
+		}
+	}
+
+	/**
+	 * Tells from the header of a sound file whether it is too long to be loaded as a clip. The header is only read the
+	 * first time a resource is asked for.
+	 * @param resource name of the resource, e.g. "/message_hello.wav"
+	 * @return true if the sound is longer than MAX_CLIP_SECONDS or its length isn't known
+	 * @throws IOException if the resource can't be read
+	 */
+	public boolean isStreamed(String resource) throws IOException {
+		Boolean known = streamed.get(resource);
+		if (known == null) {
+			known = readIsStreamed(resource);
+			streamed.put(resource, known);
+		}
+		return known;
+	}
+
+	private static boolean readIsStreamed(String resource) throws IOException {
+		URL url = ClipCache.class.getResource(resource);
+		if (url == null) {
+			throw new IOException(resource + " not found");
+		}
+		try {
+			AudioFileFormat format = AudioSystem.getAudioFileFormat(url);
+			long frames = format.getFrameLength();
+			float rate = format.getFormat().getFrameRate();
+			return frames == AudioSystem.NOT_SPECIFIED || rate <= 0 || frames / rate > MAX_CLIP_SECONDS;
+		} catch (UnsupportedAudioFileException e) {
+			throw new IOException(resource + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static Clip load(String resource) throws IOException {
+		InputStream in = ClipCache.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IOException(resource + " not found");
+		}
+		try (AudioInputStream sound = AudioSystem.getAudioInputStream(new BufferedInputStream(in))) {
+			Clip clip = AudioSystem.getClip();
+			clip.open(sound);
+			return clip;
+		} catch (UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException e) {
+			throw new IOException(resource + ": " + e.getMessage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless client that reads messages from stdin or a file and sends them to Emofani as fast as possible. It doesn't
+ * use AWT or Swing, so it runs on machines without a display.
+ *
+ * Every line contains the data part of a message, e.g. "expression=happy%50" or "gazex=130,gazey=-80". Empty lines
+ * and lines starting with # are skipped. Messages are sent without waiting for the answer of the previous one; at most
+ * --window messages are in flight at once. A summary of the answers is printed at the end.
+ */
+public class CommandLineClient {
+
+	private static final String USAGE = "Usage: java -jar emofaniInterfaceDemo.jar --cli [options] [file]\n"
+			+ "Reads messages (e.g. \"gazex=130,gazey=-80\") line by line from the file or stdin.\n"
+			+ "  --host <host>        host where Emofani is running (default: localhost)\n"
+			+ "  --port <port>        port Emofani is listening on (default: 11000)\n"
+			+ "  --input-port <port>  port for status messages (default: 0, a free port)\n"
+			+ "  --transport <t>      udp or tcp (default: udp)\n"
+			+ "  --binary             send the compact binary format if Emofani accepts it\n"
+			+ "  --timeout <ms>       time to wait for a status message (default: 50)\n"
+			+ "  --retries <n>        send unanswered messages again up to n times (default: 0)\n"
+			+ "  --cache              skip parameters Emofani already has\n"
+			+ "  --window <n>         maximum number of messages in flight (default: 1000)\n"
+			+ "  --verbose            print every sent and received message";
+
+	private final AtomicLong ok = new AtomicLong(), errors = new AtomicLong(), timeouts = new AtomicLong(),
+			failed = new AtomicLong();
+	private long elapsed;
+
+	/**
+	 * Runs the command line client and exits with 0 if every message was answered with status OK.
+	 * @param args options and an optional file, see USAGE
+	 */
+	public static void main(String[] args) {
+		System.exit(new CommandLineClient().run(args, System.in, System.out));
+	}
+
+	/**
+	 * Runs the command line client
+	 * @param args options and an optional file, see USAGE
+	 * @param in read if no file is given
+	 * @param out receives the log and the summary
+	 * @return 0 if every message was answered with status OK, 1 if not and 2 for invalid arguments
+	 */
+	int run(String[] args, InputStream in, PrintStream out) {
+		EmofaniClient.Builder builder = EmofaniClient.builder().receivePort(0);
+		String file = null;
+		int window = 1000;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--host":
+					builder.host(args[++i]);
+					break;
+				case "--port":
+					builder.sendPort(Integer.parseInt(args[++i]));
+					break;
+				case "--input-port":
+					builder.receivePort(Integer.parseInt(args[++i]));
+					break;
+				case "--transport":
+					builder.transport(TransportType.valueOf(args[++i].toUpperCase()));
+					break;
+				case "--binary":
+					builder.binary(true);
+					break;
+				case "--timeout":
+					builder.timeout(Integer.parseInt(args[++i]));
+					break;
+				case "--cache":
+					builder.cache(true);
+					break;
+				case "--retries":
+					builder.retries(Integer.parseInt(args[++i]));
+					break;
+				case "--window":
+					window = Integer.parseInt(args[++i]);
+					break;
+				case "--verbose":
+					builder.log(out::println);
+					break;
+				default:
+					if (args[i].startsWith("--") || file != null) {
+						throw new IllegalArgumentException(args[i]);
+					}
+					file = args[i];
+				}
+			}
+			if (window < 1) {
+				throw new IllegalArgumentException("--window " + window);
+			}
+		} catch (RuntimeException e) {
+			out.println("Invalid argument: " + e.getMessage());
+			out.println(USAGE);
+			return 2;
+		}
+
+		try (EmofaniClient client = builder.build();
+				InputStream input = (file != null) ? new FileInputStream(file) : in) {
+			client.open();
+			long sent = send(client, input, window);
+			out.println(summary(sent));
+		} catch (IOException e) {
+			out.println("Error: " + e.getMessage());
+			return 1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		}
+
+		return (errors.get() == 0 && timeouts.get() == 0 && failed.get() == 0) ? 0 : 1;
+	}
+
+	/**
+	 * Sends every line of the input and waits until all messages have been answered or timed out.
+	 * @return the number of sent messages
+	 */
+	private long send(EmofaniClient client, InputStream input, int window) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, EmofaniClient.ASCII));
+		Semaphore inFlight = new Semaphore(window);
+		long start = System.nanoTime();
+		long sent = 0;
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			inFlight.acquire();
+			client.sendData(line).whenComplete((status, error) -> {
+				if (error != null) {
+					(error instanceof TimeoutException ? timeouts : failed).incrementAndGet();
+				} else {
+					(status.isOk() ? ok : errors).incrementAndGet();
+				}
+				inFlight.release();
+			});
+			sent++;
+		}
+
+		inFlight.acquire(window);
+		elapsed = System.nanoTime() - start;
+		return sent;
+	}
+
+	private String summary(long sent) {
+		double seconds = elapsed / 1e9;
+		return String.format("Sent %d messages in %.3f s (%.0f messages/s): %d OK, %d ERROR, %d timed out, "
+				+ "%d failed", sent, seconds, (seconds > 0) ? sent / seconds : 0, ok.get(), errors.get(),
+				timeouts.get(), failed.get());
+	}
+
+}
@@ -1,30 +1,120 @@
 package com.steffenwittig.emofaniInterfaceDemo;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
 
 /**
- * Singleton that allows to send and listen for UDP messages. Ports and host addresses will be read from the MainWindow
- * Singleton.
+ * Singleton that allows to send and listen for UDP messages. Ports and host addresses are set by the MainWindow with
+ * setSettings() whenever one of its target fields changes, so sending never reads Swing components.
+ *
+ * The messages are sent by a TargetGroup with an EmofaniClient for every host in the MainWindow (usually one), which
+ * are kept open between messages. A new group is only created when the hosts, the transport, the format, the group
+ * mode or one of the ports in the MainWindow change. Log lines are printed to the UDP log of the MainWindow. Every
+ * status the clients receive is handed to the registered FaceStatusListeners, which are called on the event dispatch
+ * thread unless another executor is set; the MainWindow is one of them and shows the status in its controls. The
+ * traffic of all clients is counted by ClientMetrics, which are registered with the platform MBean server as
+ * "com.steffenwittig.emofani:type=Communicator".
+ *
+ * The GUI, the scenarios, the lip sync and the parameter streamer post their messages to one outbound queue with
+ * post() and postData(). They are sent in order by a single I/O thread, so the event dispatch thread never waits for
+ * the network and the messages of all sources keep the order they were posted in.
+ *
+ * The clients mirror the state of every face and don't send parameters the face already has (see StateCache), so
+ * repeating a button or a scenario step doesn't cost a round trip. resync() forgets the mirrored state, e.g. after a
+ * face has been restarted.
+ *
+ * While a recording is running, every message sent through the Communicator and every status received by its clients
+ * is written to a SessionRecorder file, which can be sent again with the SessionReplayer.
  * @author Steffen Wittig
  *
  */
 public class Communicator {
 
+	/**
+	 * The target settings of the MainWindow at one point in time
+	 */
+	public static class Settings {
+
+		private final String host;
+		private final int sendPort, receivePort, timeout;
+		private final TransportType transport;
+		private final boolean binary;
+		private final TargetGroup.Mode mode;
+
+		/**
+		 * @param host a host or a comma separated list of hosts, see TargetGroup.parseTargets()
+		 * @param sendPort port Emofani is listening on
+		 * @param receivePort port for status messages
+		 * @param transport UDP or TCP
+		 * @param binary true to send the binary format if Emofani accepts it
+		 * @param mode how many hosts have to answer OK
+		 * @param timeout time to wait for a status message in milliseconds
+		 */
+		public Settings(String host, int sendPort, int receivePort, TransportType transport, boolean binary,
+				TargetGroup.Mode mode, int timeout) {
+			this.host = host;
+			this.sendPort = sendPort;
+			this.receivePort = receivePort;
+			this.transport = transport;
+			this.binary = binary;
+			this.mode = mode;
+			this.timeout = timeout;
+		}
+
+		/**
+		 * @return true if the clients have to be created again for the other settings, i.e. anything but the timeout
+		 *         differs
+		 */
+		boolean needsNewGroup(Settings other) {
+			return other == null || !host.equals(other.host) || sendPort != other.sendPort
+					|| receivePort != other.receivePort || transport != other.transport || binary != other.binary
+					|| mode != other.mode;
+		}
+	}
+
 	private static Communicator instance;
-	private DatagramSocket server = null;
+
+	private TargetGroup group;
+	private final ClientMetrics metrics = new ClientMetrics();
+	private volatile SessionRecorder recorder;
+	private final List<FaceStatusListener> listeners = new CopyOnWriteArrayList<FaceStatusListener>();
+	private volatile Executor listenerExecutor = SwingUtilities::invokeLater;
+
+	/** the kind of threads of the clients and the target group, see ThreadMode.getDefault() */
+	private final ThreadMode threadMode = ThreadMode.getDefault();
+
+	/** serves the outbound queue */
+	private final ExecutorService io = Executors.newSingleThreadExecutor(threadMode.newThreadFactory("emofani-io"));
+
+	// the newest target settings of the MainWindow, and the ones the group was created with
+	private volatile Settings settings;
+	private Settings groupSettings;
 
 	/**
 	 * Constructor is private as this is a singleton
 	 */
-	private Communicator() {			
-		
+	private Communicator() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					new ObjectName(ClientMetrics.OBJECT_NAME));
+		} catch (JMException e) {
+			MainWindow.getLog().print("Error: the client metrics can't be registered as an MBean: " + e.getMessage());
+		}
 	}
-	
+
 	/**
 	 * Get an instance of the singleton (or create it)
 	 * @return Communicator
@@ -35,80 +125,244 @@ public class Communicator {
 		}
 		return instance;
 	}
-	
+
 	/**
-	 * Listen for UDP messages on the port specified in MainWindow
+	 * Sets the targets of the following messages. Called by the MainWindow on the event dispatch thread whenever one
+	 * of its target fields changes.
+	 * @param settings the new settings
 	 */
-	public void listen(){
-		MainWindow mw = MainWindow.getInstance();
-		try {
-			DatagramPacket packet = new DatagramPacket(new byte[1024],1024);
-			server = new DatagramSocket(mw.getReceivePort());
-			server.setSoTimeout(mw.getTimeout());
-			server.receive(packet);
-			String data = new String(packet.getData()).trim();
-			mw.print("In: \"" + data + "\"");
-			mw.update(data);
-		} catch (SocketTimeoutException e) {
-			mw.print("Timeout: Emofani didn't answer in time.");
-		}catch (IOException e) {
-			mw.print("Error: " + e.getMessage());
-		} finally {
-			server.close();
+	public void setSettings(Settings settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * Returns the target group for the current settings. The previous group is closed and a new one is created if
+	 * they have changed.
+	 * @return the group, with a single target unless the host field contains a list
+	 * @throws IllegalStateException if no settings have been set yet
+	 */
+	public synchronized TargetGroup getGroup() {
+		Settings settings = this.settings;
+		if (settings == null) {
+			throw new IllegalStateException("No target settings");
 		}
+		if (group == null || settings.needsNewGroup(groupSettings)) {
+			close();
+			EmofaniClient.Builder builder = EmofaniClient.builder()
+					.receivePort(settings.receivePort)
+					.transport(settings.transport)
+					.binary(settings.binary)
+					.cache(true)
+					.threadMode(threadMode)
+					.log(MainWindow.getLog())
+					.metrics(metrics)
+					.statusListener(this::statusReceived);
+			group = new TargetGroup(TargetGroup.parseTargets(settings.host, builder, settings.sendPort),
+					settings.mode, threadMode);
+			groupSettings = settings;
+		}
+		for (EmofaniClient client : group.getTargets()) {
+			client.setTimeout(settings.timeout);
+		}
+		return group;
+	}
+
+	/**
+	 * Called on the receiver thread of a client. Records the status and hands it to the listeners.
+	 */
+	private void statusReceived(FaceStatus status) {
+		// the text of the status is only formatted for a recording
+		if (recorder != null) {
+			record(MessageLog.Direction.IN, status.toString());
+		}
+		if (listeners.isEmpty()) {
+			return;
+		}
+		listenerExecutor.execute(() -> {
+			for (FaceStatusListener listener : listeners) {
+				try {
+					listener.statusReceived(status);
+				} catch (RuntimeException e) {
+					MainWindow.getInstance().print("Error: Status listener failed: " + e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param listener receives every status message of every target, on the listener executor
+	 */
+	public void addStatusListener(FaceStatusListener listener) {
+		listeners.add(listener);
 	}
-	
+
+	public void removeStatusListener(FaceStatusListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @param listenerExecutor calls the status listeners (default: SwingUtilities::invokeLater)
+	 */
+	public void setListenerExecutor(Executor listenerExecutor) {
+		this.listenerExecutor = listenerExecutor;
+	}
+
 	/**
-	 * Send an UDP messages containing a parameter and value to the host and port specified in MainWindow
+	 * @return the client of the first target in the MainWindow
+	 */
+	public EmofaniClient getClient() {
+		return getGroup().getTargets().get(0);
+	}
+
+	/**
+	 * @return the traffic and round trip times of all messages sent by the Communicator
+	 */
+	public ClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Forgets the mirrored state of all faces, so the next messages are sent completely
+	 */
+	public synchronized void resync() {
+		if (group != null) {
+			for (EmofaniClient client : group.getTargets()) {
+				client.resync();
+			}
+		}
+	}
+
+	/**
+	 * Closes the transports of all targets. The next message will open them again.
+	 */
+	public synchronized void close() {
+		if (group != null) {
+			group.close();
+			group = null;
+		}
+	}
+
+	/**
+	 * Puts a message into the outbound queue and returns immediately. The I/O thread sends it to the hosts and port
+	 * specified in MainWindow without waiting for the answers; the answers are shown by the MainWindow and a timeout
+	 * or a group without enough OK answers is printed to its log. Safe to call on the event dispatch thread.
 	 * @param param The name of the parameter, e.g. "expression"
 	 * @param value The value of the parameter, e.g. "happy%50"
 	 */
-	public void send(String param, String value){
-		
-		MainWindow mw = MainWindow.getInstance();
-		
-		// message format: 
-		// t:<timestamp>;s:<source>;p:<port>;d:<parameter>=<value>
-		String message = "t:" + System.currentTimeMillis() + ";";
+	public void post(String param, String value) {
+		postData(param + "=" + value);
+	}
 
+	/**
+	 * Puts the data part of a message into the outbound queue and returns immediately, like post(). Can be called on
+	 * any thread; messages are sent in the order they were posted in.
+	 * @param data one or more comma separated key=value pairs
+	 */
+	public void postData(final String data) {
+		io.execute(() -> {
+			try {
+				sendData(data).thenAccept(result -> {
+					if (result.getTargets() == 1) {
+						if (result.getError(0) instanceof TimeoutException) {
+							MainWindow.getInstance().print("Timeout: Emofani didn't answer in time.");
+						}
+					} else if (!result.isSuccess()) {
+						MainWindow.getInstance().print("Error: " + result);
+					}
+				});
+			} catch (RuntimeException e) {
+				MainWindow.getInstance().print("Error: " + e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Send an UDP messages containing a parameter and value to the hosts and port specified in MainWindow and wait
+	 * until enough of them answer or the timeout specified in MainWindow has passed.
+	 * @param param The name of the parameter, e.g. "expression"
+	 * @param value The value of the parameter, e.g. "happy%50"
+	 */
+	public void send(String param, String value){
 		try {
-			message += "s:" + InetAddress.getLocalHost().getHostAddress() + ";";
-		} catch (UnknownHostException e1) {
-			message += "s:localhost;";
+			sendAsync(param, value).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			MainWindow.getInstance().print("Error: " + e.getCause().getMessage());
 		}
-		message += "p:" + mw.getReceivePort() + ";";
-		message += "d:" + param + "=" + value;
-		DatagramSocket s = null;
-		
-		try {
-			DatagramPacket p = new DatagramPacket(
-					message.getBytes(),
-					message.length(),
-					InetAddress.getByName(mw.getHost()),
-					mw.getSendPort());
-			s = new DatagramSocket();
-			s.send(p);
-			mw.print("Out: \"" + message + "\" to " + mw.getHost() + " on port " + mw.getSendPort());
-		} catch (IOException e) {
-			mw.print("Error: " + e.getMessage());
-		} finally {
+	}
+
+	/**
+	 * Send an UDP messages containing a parameter and value to the hosts and port specified in MainWindow without
+	 * waiting for the answers.
+	 * @param param The name of the parameter, e.g. "expression"
+	 * @param value The value of the parameter, e.g. "happy%50"
+	 * @return a future that completes with the answers of the hosts as soon as the group mode in MainWindow is
+	 *         decided. Hosts that didn't answer within the timeout specified in MainWindow count as failed.
+	 */
+	public CompletableFuture<TargetGroup.Result> sendAsync(String param, String value) {
+		return sendData(param + "=" + value);
+	}
+
+	/**
+	 * Sends the data part of a message to the hosts and port specified in MainWindow without waiting for the answers.
+	 * @param data one or more comma separated key=value pairs
+	 * @return a future that completes with the answers of the hosts as soon as the group mode is decided
+	 */
+	public CompletableFuture<TargetGroup.Result> sendData(String data) {
+		TargetGroup group = getGroup();
+		record(MessageLog.Direction.OUT, data);
+		return group.sendData(data);
+	}
+
+	/**
+	 * Starts recording the session to a file. A running recording is stopped first.
+	 * @param path the file, it is replaced if it exists
+	 * @throws IOException if the file can't be created
+	 */
+	public synchronized void startRecording(Path path) throws IOException {
+		stopRecording();
+		recorder = new SessionRecorder(path);
+		MainWindow.getInstance().print("Info: Recording the session to " + path.toAbsolutePath() + ".");
+	}
+
+	/**
+	 * Stops the recording, if one is running
+	 */
+	public synchronized void stopRecording() {
+		SessionRecorder recorder = this.recorder;
+		if (recorder != null) {
+			this.recorder = null;
 			try {
-				s.close();
-			} catch (Exception e) {
-				mw.print("Error: " + e.getMessage()); 
+				recorder.close();
+				MainWindow.getInstance().print("Info: Recorded " + recorder.getRecordCount() + " messages to "
+						+ recorder.getPath().toAbsolutePath() + ".");
+			} catch (IOException e) {
+				MainWindow.getInstance().print("Error: " + e.getMessage());
 			}
 		}
-		
-		// listen for OK
-		listen();
-
 	}
 
 	/**
-	 * Closes the UDP connection.
+	 * @return true while a recording is running
 	 */
-	protected void finalize() {
-		server.close();
+	public boolean isRecording() {
+		return recorder != null;
 	}
-	
+
+	private void record(MessageLog.Direction direction, String text) {
+		SessionRecorder recorder = this.recorder;
+		if (recorder != null) {
+			try {
+				recorder.record(direction, text);
+			} catch (IOException e) {
+				// e.g. a full disk, the messages are still sent. Also thrown if the recording was just stopped.
+				if (this.recorder == recorder) {
+					this.recorder = null;
+					MainWindow.getInstance().print("Error: Recording stopped, " + e.getMessage());
+				}
+			}
+		}
+	}
+
 }
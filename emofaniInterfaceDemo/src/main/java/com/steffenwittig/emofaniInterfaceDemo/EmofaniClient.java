@@ -0,0 +1,807 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends messages to a single Emofani instance via UDP or TCP and receives its status messages. The client doesn't
+ * depend on Swing, so it can be used by headless controller processes as well as by the MainWindow (through the
+ * Communicator).
+ *
+ * The transport is opened with the first message and kept open until close() is called. With UDP, one channel is
+ * connected to the target for sending and one channel is bound to the input port for receiving status messages; with
+ * TCP, both go over one connection that is opened again after it broke. A background receiver thread matches every
+ * status message to the pending message with the same id (t), so any number of messages can be in flight at once.
+ * Every status, answer or not, is also handed to the registered FaceStatusListeners.
+ * Timeouts are enforced by a scheduler shared by all clients.
+ *
+ * If the binary format is enabled, the client asks for it with a handshake whenever the transport is opened. Messages
+ * are then sent in the format of BinaryProtocol, unless Emofani answered the handshake with an error or not at all.
+ *
+ * Messages that aren't answered within the timeout can be sent again a number of times with a new id, waiting twice
+ * as long after every retry. Parameters that have been sent with a newer value in the meantime are left out of the
+ * retransmission, and a message whose parameters have all been superseded is given up.
+ *
+ * With the cache enabled, the client mirrors the state of the face in a StateCache and leaves out parameters that
+ * Emofani has already acknowledged with the same value. A message that wouldn't change anything isn't sent at all.
+ *
+ * Example: EmofaniClient.builder().host("192.168.2.10").build().send("expression", "happy%50");
+ */
+public class EmofaniClient implements Closeable {
+
+	static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** enforces the timeouts of all pending requests */
+	private static final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "emofani-timeouts");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** the wait before a retry is doubled at most this many times */
+	private static final int MAX_BACKOFF_SHIFT = 3;
+
+	static {
+		scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	private final String host;
+	private final int sendPort;
+	private final int configuredReceivePort;
+	private final TransportType transportType;
+	private final boolean binary;
+	private volatile int timeout;
+	private final int retries;
+	private final SequenceGenerator sequence;
+	private final StateCache cache;
+	private final ThreadMode threadMode;
+	private final MessageLog log;
+	private final List<FaceStatusListener> listeners = new CopyOnWriteArrayList<FaceStatusListener>();
+	private final Executor listenerExecutor;
+	private final ClientMetrics metrics;
+
+	private Transport transport;
+	private final MessageEncoder encoder = new MessageEncoder();
+	private final ByteBuffer binaryBuffer = ByteBuffer.allocateDirect(MessageEncoder.CAPACITY);
+	// true while the open transport leads to an Emofani that accepted the binary format
+	private boolean binaryAccepted;
+
+	// requests waiting for a status message, ordered by id
+	private final ConcurrentSkipListMap<Long, CompletableFuture<FaceStatus>> pending =
+			new ConcurrentSkipListMap<Long, CompletableFuture<FaceStatus>>();
+	// id of the newest message for every parameter, only kept if messages are retransmitted
+	private final Map<String, Long> latest = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * Configures an EmofaniClient. All settings are optional, the defaults are the ones of Emofani.
+	 */
+	public static class Builder {
+
+		private String host = "localhost";
+		private int sendPort = 11000, receivePort = 11001, timeout = 50, retries;
+		private TransportType transport = TransportType.UDP;
+		private boolean binary;
+		private MessageLog log;
+		private FaceStatusListener listener;
+		private Executor listenerExecutor;
+		private ClientMetrics metrics;
+		private SequenceGenerator sequence;
+		private boolean cache;
+		private ThreadMode threadMode = ThreadMode.PLATFORM;
+
+		private Builder() {
+
+		}
+
+		/**
+		 * @param host Name or address of the host where Emofani is running (default: localhost)
+		 * @return this builder
+		 */
+		public Builder host(String host) {
+			this.host = host;
+			return this;
+		}
+
+		/**
+		 * @param sendPort Port Emofani is listening on (default: 11000)
+		 * @return this builder
+		 */
+		public Builder sendPort(int sendPort) {
+			this.sendPort = sendPort;
+			return this;
+		}
+
+		/**
+		 * @param receivePort Port where Emofani should send status messages to (default: 11001). 0 chooses a free
+		 *            port.
+		 * @return this builder
+		 */
+		public Builder receivePort(int receivePort) {
+			this.receivePort = receivePort;
+			return this;
+		}
+
+		/**
+		 * @param transport How messages are sent to Emofani (default: UDP)
+		 * @return this builder
+		 */
+		public Builder transport(TransportType transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * @param binary Send messages in the compact format of BinaryProtocol if Emofani accepts it (default: false,
+		 *            text)
+		 * @return this builder
+		 */
+		public Builder binary(boolean binary) {
+			this.binary = binary;
+			return this;
+		}
+
+		/**
+		 * @param timeout Milliseconds to wait for a status message before a message fails, 0 waits forever
+		 *            (default: 50)
+		 * @return this builder
+		 */
+		public Builder timeout(int timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		/**
+		 * @param retries How often a message that isn't answered within the timeout is sent again before it fails
+		 *            (default: 0)
+		 * @return this builder
+		 */
+		public Builder retries(int retries) {
+			this.retries = retries;
+			return this;
+		}
+
+		/**
+		 * @param sequence Hands out the message ids. Clients that send to the same Emofani from one process can share
+		 *            a sequence (default: a new sequence per client)
+		 * @return this builder
+		 */
+		public Builder sequence(SequenceGenerator sequence) {
+			this.sequence = sequence;
+			return this;
+		}
+
+		/**
+		 * @param cache Leave out parameters that Emofani has already acknowledged with the same value, see StateCache
+		 *            (default: false, every parameter is sent)
+		 * @return this builder
+		 */
+		public Builder cache(boolean cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * @param threadMode The kind of thread that receives the status messages (default: PLATFORM)
+		 * @return this builder
+		 */
+		public Builder threadMode(ThreadMode threadMode) {
+			this.threadMode = threadMode;
+			return this;
+		}
+
+		/**
+		 * @param log Receives a line for every sent and received message and every error (default: no log)
+		 * @return this builder
+		 */
+		public Builder log(MessageLog log) {
+			this.log = log;
+			return this;
+		}
+
+		/**
+		 * @param listener Receives every status message, including status messages Emofani sends on its own (e.g. in
+		 *            idle mode). More listeners can be added with addStatusListener() (default: none)
+		 * @return this builder
+		 */
+		public Builder statusListener(FaceStatusListener listener) {
+			this.listener = listener;
+			return this;
+		}
+
+		/**
+		 * @param listenerExecutor Calls the status listeners, e.g. SwingUtilities::invokeLater. Listeners that only
+		 *            take a moment can be called on the receiver thread, which keeps up with the status messages only
+		 *            if they don't block (default: the receiver thread)
+		 * @return this builder
+		 */
+		public Builder listenerExecutor(Executor listenerExecutor) {
+			this.listenerExecutor = listenerExecutor;
+			return this;
+		}
+
+		/**
+		 * @param metrics Counts the traffic and round trip times of the client. Several clients can share the same
+		 *            metrics (default: not counted)
+		 * @return this builder
+		 */
+		public Builder metrics(ClientMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * Creates the client. The transport is opened with the first message or by calling open().
+		 * @return the client
+		 */
+		public EmofaniClient build() {
+			return new EmofaniClient(this);
+		}
+	}
+
+	private EmofaniClient(Builder builder) {
+		this.host = builder.host;
+		this.sendPort = builder.sendPort;
+		this.configuredReceivePort = builder.receivePort;
+		this.transportType = builder.transport;
+		this.binary = builder.binary;
+		this.timeout = builder.timeout;
+		this.retries = Math.max(0, builder.retries);
+		this.sequence = (builder.sequence != null) ? builder.sequence : new SequenceGenerator();
+		this.cache = builder.cache ? new StateCache() : null;
+		this.threadMode = builder.threadMode.resolve();
+		this.log = builder.log;
+		if (builder.listener != null) {
+			listeners.add(builder.listener);
+		}
+		this.listenerExecutor = builder.listenerExecutor;
+		this.metrics = builder.metrics;
+	}
+
+	/**
+	 * @return a builder with Emofani's default settings
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Opens the transport and starts the receiver thread. Does nothing if it is already open. If the binary format is
+	 * enabled, this waits for the answer to the handshake.
+	 * @throws IOException if the host can't be resolved or reached
+	 */
+	public synchronized void open() throws IOException {
+		if (isOpen()) {
+			return;
+		}
+		closeTransport();
+		if (cache != null) {
+			// Emofani may have been restarted
+			cache.clear();
+		}
+		Transport transport = transportType.create(host, sendPort, configuredReceivePort,
+				threadMode.newThreadFactory("emofani-receiver"));
+		transport.open(new Receiver(transport));
+		this.transport = transport;
+		encoder.setHeader(transport.getSourceAddress(), transport.getReceivePort());
+		binaryAccepted = false;
+		if (binary) {
+			handshake();
+		}
+	}
+
+	/**
+	 * Asks Emofani for the binary format. Emofani versions that don't know it answer with an error, the text format
+	 * is used then.
+	 */
+	private void handshake() {
+		CompletableFuture<FaceStatus> answer = sendData(BinaryProtocol.HANDSHAKE);
+		try {
+			FaceStatus status = answer.get((timeout > 0) ? timeout : 1000, TimeUnit.MILLISECONDS);
+			binaryAccepted = status.isOk();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			// no answer, stay with the text format
+			pending.values().remove(answer);
+			answer.cancel(false);
+		}
+		print(binaryAccepted ? "Info: Emofani accepted the binary format."
+				: "Info: Emofani doesn't accept the binary format, messages are sent as text.");
+	}
+
+	/**
+	 * Closes the transport, which also ends the receiver thread. Pending messages fail. The next message will open
+	 * the transport again.
+	 */
+	@Override
+	public synchronized void close() {
+		closeTransport();
+		failPending(new ClosedChannelException());
+	}
+
+	/**
+	 * @param listener receives every status message from now on
+	 */
+	public void addStatusListener(FaceStatusListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeStatusListener(FaceStatusListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Forgets the mirrored state of the face, e.g. after Emofani has been restarted, so the next messages are sent
+	 * completely. Does nothing if the cache isn't enabled.
+	 */
+	public void resync() {
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * @return the mirrored state of the face, null if the cache isn't enabled
+	 */
+	public StateCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return true if messages are currently sent in the binary format
+	 */
+	public synchronized boolean isBinary() {
+		return isOpen() && binaryAccepted;
+	}
+
+	/**
+	 * @return true if the transport is currently open
+	 */
+	public synchronized boolean isOpen() {
+		return transport != null && transport.isOpen();
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getSendPort() {
+		return sendPort;
+	}
+
+	public TransportType getTransportType() {
+		return transportType;
+	}
+
+	/**
+	 * @return the kind of thread that receives the status messages, PLATFORM if virtual threads aren't available
+	 */
+	public ThreadMode getThreadMode() {
+		return threadMode;
+	}
+
+	/**
+	 * @return the port status messages are received on. If a free port was requested, it is only known once the
+	 *         transport is open.
+	 */
+	public synchronized int getReceivePort() {
+		return isOpen() ? transport.getReceivePort() : configuredReceivePort;
+	}
+
+	public int getRetries() {
+		return retries;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout Milliseconds to wait for a status message before a message fails, 0 waits forever. Applies to
+	 *            messages sent afterwards.
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the number of messages that have been sent but not answered yet
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Sends a parameter and waits until Emofani answers or the timeout has passed.
+	 * @param param The name of the parameter, e.g. "expression"
+	 * @param value The value of the parameter, e.g. "happy%50"
+	 * @return the status Emofani answered with, null if it didn't answer in time or the message couldn't be sent
+	 */
+	public FaceStatus send(String param, String value) {
+		return await(sendAsync(param, value));
+	}
+
+	/**
+	 * Sends a parameter without waiting for the answer.
+	 * @param param The name of the parameter, e.g. "expression"
+	 * @param value The value of the parameter, e.g. "happy%50"
+	 * @return a future that completes with the status Emofani answered with. It fails with a TimeoutException if
+	 *         there was no answer within the timeout.
+	 */
+	public CompletableFuture<FaceStatus> sendAsync(String param, String value) {
+		return sendData(param + "=" + value);
+	}
+
+	/**
+	 * Starts a batch of parameters that will be sent in a single message and applied by Emofani at once.
+	 * @return an empty batch
+	 */
+	public Batch batch() {
+		return new Batch(this);
+	}
+
+	/**
+	 * Waits until the future of a sent message is completed. Timeouts are printed to the log.
+	 * @return the status or null if the message failed
+	 */
+	FaceStatus await(CompletableFuture<FaceStatus> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				print("Timeout: Emofani didn't answer in time.");
+			}
+			// other errors have already been printed
+		}
+		return null;
+	}
+
+	/**
+	 * Sends the data part of a message without waiting for the answer. The message is encoded without copying it,
+	 * but every call creates the returned future and a few small objects, see MessageEncoder.
+	 * @param data one or more comma separated key=value pairs
+	 * @return a future that completes with the status Emofani answered with. If the cache is enabled and the message
+	 *         wouldn't change anything, it isn't sent and the future is completed with the last status right away.
+	 *         Data that can't be encoded or sent fails the future, nothing is thrown.
+	 */
+	public CompletableFuture<FaceStatus> sendData(String data) {
+
+		final CompletableFuture<FaceStatus> future = new CompletableFuture<FaceStatus>();
+		final long id, start;
+		int timeout = this.timeout;
+
+		// ids have to be handed out in the order the messages are written, Emofani drops messages with smaller ids
+		synchronized (this) {
+			try {
+				// the handshake of a new transport takes the first id
+				open();
+			} catch (IOException e) {
+				return fail(future, e);
+			}
+			if (cache != null) {
+				// after open(), which forgets the state of a face that may have been restarted
+				String delta = cache.delta(data);
+				FaceStatus last = cache.getLastStatus();
+				if (delta == null && last != null) {
+					if (metrics != null) {
+						metrics.suppressed();
+					}
+					future.complete(last);
+					return future;
+				}
+				data = (delta != null) ? delta : data;
+			}
+			id = sequence.next();
+			try {
+				start = System.nanoTime();
+				int bytes = write(id, data, future);
+				if (metrics != null) {
+					metrics.sent(data, bytes);
+				}
+			} catch (IOException | RuntimeException e) {
+				// e.g. data that doesn't fit into a message
+				pending.remove(id);
+				return fail(future, e);
+			}
+			if (cache != null) {
+				cache.sent(id, data);
+			}
+			if (retries > 0) {
+				// older messages with the same parameters won't be sent again
+				for (String key : keys(data)) {
+					latest.put(key, id);
+				}
+			}
+		}
+
+		// a timeout of 0 waits forever, like a socket timeout would
+		final Expiry expiry = (timeout <= 0) ? null : new Expiry(id, data, future, timeout);
+		if (expiry != null || metrics != null || cache != null) {
+			final String sentData = data;
+			future.whenComplete((status, error) -> {
+				if (cache != null && status != null) {
+					cache.acknowledged(id, sentData, status);
+				}
+				if (expiry != null) {
+					expiry.cancel();
+				}
+				if (metrics != null) {
+					metrics.completed(System.nanoTime() - start, status, error);
+				}
+			});
+		}
+
+		return future;
+	}
+
+	/**
+	 * Encodes a message, registers it as pending and writes it
+	 * @return the number of bytes written
+	 */
+	private int write(long id, String data, CompletableFuture<FaceStatus> future) throws IOException {
+		ByteBuffer message;
+		if (binaryAccepted && BinaryProtocol.encodeMessage(binaryBuffer, id, transport.getReceivePort(), data)) {
+			message = binaryBuffer;
+			if (log != null) {
+				log.print(MessageLog.Direction.OUT, "Out: binary (" + message.remaining() + " bytes) \"t:" + id
+						+ ";d:" + data + "\" to " + host + " on " + transportType + " port " + sendPort);
+			}
+		} else {
+			// message format:
+			// t:<timestamp>;s:<source>;p:<port>;d:<parameter>=<value>[,<parameter>=<value>...]
+			message = encoder.begin(id).appendData(data).finish();
+			if (log != null) {
+				log.print(MessageLog.Direction.OUT,
+						"Out: \"" + encoder + "\" to " + host + " on " + transportType + " port " + sendPort);
+			}
+		}
+		pending.put(id, future);
+		return transport.send(message);
+	}
+
+	/**
+	 * Sends the parameters of an unanswered message again with a new id, except for those that have been sent with a
+	 * newer value in the meantime.
+	 * @return false if there was nothing left to send or the message couldn't be sent, the future is completed then
+	 */
+	private synchronized boolean retransmit(Expiry expiry) {
+		StringBuilder remaining = new StringBuilder();
+		for (String pair : expiry.data.split(",")) {
+			Long newer = latest.get(key(pair));
+			if (newer == null || newer <= expiry.firstId) {
+				remaining.append((remaining.length() > 0) ? "," : "").append(pair);
+			}
+		}
+		if (remaining.length() == 0) {
+			expiry.future.completeExceptionally(new CancellationException("Superseded by a newer value"));
+			return false;
+		}
+
+		if (!isOpen()) {
+			abort(expiry.future, new ClosedChannelException());
+			return false;
+		}
+		long id = 0;
+		try {
+			id = sequence.next();
+			print("Info: Emofani didn't answer message " + expiry.id + ", sending it again as " + id + ".");
+			int bytes = write(id, remaining.toString(), expiry.future);
+			expiry.id = id;
+			if (metrics != null) {
+				metrics.retransmitted(bytes);
+			}
+			return true;
+		} catch (IOException e) {
+			pending.remove(id);
+			abort(expiry.future, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Fails a message if it isn't answered in time, or sends it again if retries are left. Every retry waits twice as
+	 * long as the one before, the wait is doubled at most MAX_BACKOFF_SHIFT times, i.e. up to 8 times the timeout.
+	 */
+	private class Expiry implements Runnable {
+
+		final long firstId;
+		final String data;
+		final CompletableFuture<FaceStatus> future;
+		final int timeout;
+		volatile long id;
+		private int attempt;
+		private volatile ScheduledFuture<?> task;
+
+		Expiry(long id, String data, CompletableFuture<FaceStatus> future, int timeout) {
+			this.firstId = this.id = id;
+			this.data = data;
+			this.future = future;
+			this.timeout = timeout;
+			task = scheduler.schedule(this, timeout, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+			long id = this.id;
+			if (!pending.remove(id, future)) {
+				return;
+			}
+			if (attempt < retries) {
+				attempt++;
+				if (retransmit(this) && !future.isDone()) {
+					long delay = (long) timeout << Math.min(attempt, MAX_BACKOFF_SHIFT);
+					task = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+				}
+				return;
+			}
+			future.completeExceptionally(new TimeoutException("Emofani didn't answer message " + id));
+		}
+
+		void cancel() {
+			task.cancel(false);
+		}
+	}
+
+	private static List<String> keys(String data) {
+		List<String> keys = new ArrayList<String>();
+		for (String pair : data.split(",")) {
+			keys.add(key(pair));
+		}
+		return keys;
+	}
+
+	private static String key(String pair) {
+		int separator = pair.indexOf('=');
+		return ((separator < 0) ? pair : pair.substring(0, separator)).trim();
+	}
+
+	/**
+	 * Fails a message that couldn't be sent at all. sendData() returns before it registers the message with the
+	 * metrics, so the failure is counted here.
+	 */
+	private CompletableFuture<FaceStatus> fail(CompletableFuture<FaceStatus> future, Exception e) {
+		if (metrics != null) {
+			metrics.failed();
+		}
+		return abort(future, e);
+	}
+
+	/**
+	 * Fails a message that has been sent before, the metrics count the failure when its future completes
+	 */
+	private CompletableFuture<FaceStatus> abort(CompletableFuture<FaceStatus> future, Exception e) {
+		print("Error: " + e.getMessage());
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	/**
+	 * Calls every listener with a status. A listener that fails doesn't keep the status from the others.
+	 */
+	private void dispatch(FaceStatus status) {
+		for (FaceStatusListener listener : listeners) {
+			try {
+				listener.statusReceived(status);
+			} catch (RuntimeException e) {
+				print("Error: Status listener failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Handles the status messages of one opened transport. Every status completes the pending request with the same
+	 * id. Status messages without an id (sent by older versions of Emofani) complete the oldest pending request.
+	 */
+	private class Receiver implements Transport.Receiver {
+
+		private final Transport transport;
+		private final FaceState state = new FaceState();
+
+		Receiver(Transport transport) {
+			this.transport = transport;
+		}
+
+		@Override
+		public void received(ByteBuffer buffer) {
+			boolean isBinary = BinaryProtocol.isBinary(buffer);
+			boolean valid = isBinary ? BinaryProtocol.decodeStatus(buffer, state) : StatusParser.parse(buffer, state);
+			// the text is only needed for the log; without one, FaceStatus writes it if it is asked for
+			String data = null;
+			if (log != null) {
+				data = isBinary ? BinaryProtocol.toText(state) : new String(buffer.array(), 0, buffer.limit(), ASCII);
+				log.print(MessageLog.Direction.IN,
+						"In: " + (isBinary ? "binary (" + buffer.limit() + " bytes) " : "") + "\"" + data + "\"");
+			}
+			if (metrics != null) {
+				metrics.received(buffer.limit(), valid && state.getInvalidFields() == 0);
+			}
+			if (!valid) {
+				print("Error: Received message is not a status message.");
+				return;
+			}
+
+			CompletableFuture<FaceStatus> future;
+			if (state.getId() != FaceStatus.NO_ID) {
+				future = pending.remove(state.getId());
+			} else {
+				Map.Entry<Long, CompletableFuture<FaceStatus>> oldest = pending.pollFirstEntry();
+				future = (oldest != null) ? oldest.getValue() : null;
+			}
+
+			FaceStatus status = new FaceStatus(state, data);
+			if (future != null) {
+				future.complete(status);
+			} else if (cache != null) {
+				cache.update(status);
+			}
+			if (!listeners.isEmpty()) {
+				if (listenerExecutor == null) {
+					dispatch(status);
+				} else {
+					try {
+						listenerExecutor.execute(() -> dispatch(status));
+					} catch (RejectedExecutionException e) {
+						// the executor has been shut down
+					}
+				}
+			}
+		}
+
+		/**
+		 * No answers will arrive for the pending messages, they fail right away instead of waiting for their timeout
+		 */
+		@Override
+		public void disconnected(IOException cause) {
+			synchronized (EmofaniClient.this) {
+				if (EmofaniClient.this.transport != transport) {
+					return;
+				}
+				closeTransport();
+			}
+			print("Error: " + cause.getMessage());
+			failPending(cause);
+		}
+	}
+
+
+	private void print(String message) {
+		if (log != null) {
+			log.print(message);
+		}
+	}
+
+	private void failPending(Exception cause) {
+		Map.Entry<Long, CompletableFuture<FaceStatus>> entry;
+		while ((entry = pending.pollFirstEntry()) != null) {
+			entry.getValue().completeExceptionally(cause);
+		}
+	}
+
+	private void closeTransport() {
+		if (transport != null) {
+			transport.close();
+			transport = null;
+		}
+	}
+
+}
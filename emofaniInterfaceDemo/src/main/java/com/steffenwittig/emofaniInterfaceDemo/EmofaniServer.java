@@ -0,0 +1,851 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the receiving side of Emofani (FaceAnimator.HandleMessage in the Unity project), e.g. to load test
+ * clients or to run them in unit tests without Unity. It implements the UDP interface described in the README:
+ *
+ * - messages are read from t:[timestamp];s:[source];p:[port];d:[key]=[value][,[key]=[value]...]
+ * - messages with a smaller t than the last applied message are dropped
+ * - all parameters of a message are applied together or not at all
+ * - every message is answered with status:OK and the state of all parameters or status:ERROR and the reason, sent to
+ *   s:p
+ *
+ * Messages in the format of BinaryProtocol are always accepted and answered in that format. The parameter
+ * protocol=binary1 only lets a client find out that the server understands it before it switches.
+ *
+ * The same port number also accepts TCP connections (see TcpTransport). Messages and status messages are preceded by
+ * their length as a 4 byte big endian integer and status messages are sent back on the connection, in order; s and p
+ * are not used for them.
+ *
+ * A single thread serves the non-blocking channels with a selector and reuses its buffers, so the server can answer
+ * tens of thousands of messages per second on the loopback interface. There is no animation: parameters are set to
+ * their target values immediately.
+ */
+public class EmofaniServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 11000;
+
+	/** port status messages are sent to if a message doesn't contain one, like in Emofani */
+	public static final int FALLBACK_SEND_PORT = 11001;
+
+	// expressions as defined in FaceAnimator.Awake()
+	private static final byte[][] EXPRESSIONS = { Ascii.ascii("neutral"), Ascii.ascii("happy"),
+			Ascii.ascii("sad"), Ascii.ascii("attentive"), Ascii.ascii("sleepy"), Ascii.ascii("frustrated"),
+			Ascii.ascii("excited"), Ascii.ascii("relaxed") };
+	private static final int[] EXPRESSION_PLEASURE = { 0, 85, -71, 0, 5, -56, 63, 70 };
+	private static final int[] EXPRESSION_AROUSAL = { 0, 12, -36, 91, -97, 44, 72, -64 };
+
+	private static final byte[] AROUSAL = Ascii.ascii("arousal"), PLEASURE = Ascii.ascii("pleasure"),
+			BLUSH = Ascii.ascii("blush"), GAZE_X = Ascii.ascii("gazex"), GAZE_Y = Ascii.ascii("gazey"),
+			GAZE_Z = Ascii.ascii("gazez"), EXPRESSION = Ascii.ascii("expression"), TALKING = Ascii.ascii("talking"),
+			IDLE = Ascii.ascii("idle"), MOUTH = Ascii.ascii("mouth"), TRUE = Ascii.ascii("true"),
+			FALSE = Ascii.ascii("false"), PROTOCOL = Ascii.ascii("protocol"), BINARY1 = Ascii.ascii("binary1");
+
+	/** status messages a TCP client hasn't read yet, the connection isn't read from while there are more */
+	private static final int MAX_PENDING_OUTPUT = 1 << 20;
+
+	/**
+	 * A TCP connection, only used by the server thread
+	 */
+	private static class Connection {
+
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocate(TcpTransport.MAX_FRAME_LENGTH + 4);
+		ByteBuffer out = ByteBuffer.allocate(4096);
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	private final DatagramChannel channel;
+	private final ServerSocketChannel tcpChannel;
+	private final Selector selector;
+	private final Set<Connection> connections = new HashSet<Connection>();
+	private Thread thread;
+	private volatile MessageLog log = System.err::println;
+
+	// the connection the current message came from, null for UDP
+	private Connection connection;
+
+	private final ByteBuffer in = ByteBuffer.allocateDirect(65536);
+	private final ByteBuffer out = ByteBuffer.allocateDirect(MessageEncoder.CAPACITY);
+
+	// parameters, only written by the server thread
+	private volatile int arousal, pleasure, blush, gazeX, gazeY, gazeZ = 250;
+	private volatile int mouth = -1;
+	private volatile boolean talking, idle;
+	private long lastInputId;
+
+	// parameters before the current message, to roll it back
+	private final int[] saved = new int[9];
+
+	// address the last status was sent to, reused while messages come from the same source
+	private final byte[] replyHost = new byte[256];
+	private int replyHostLength = -1, replyPort = -1;
+	private InetSocketAddress replyAddress;
+
+	private final AtomicLong received = new AtomicLong(), answeredOk = new AtomicLong(),
+			answeredError = new AtomicLong(), dropped = new AtomicLong(), binary = new AtomicLong();
+
+	/**
+	 * Binds the server to a UDP and a TCP port on all interfaces. Call start() to answer messages.
+	 * @param port the port to listen on, 0 chooses a free port. TCP uses the same port number if it is free.
+	 * @throws IOException if the port can't be bound
+	 */
+	public EmofaniServer(int port) throws IOException {
+		channel = DatagramChannel.open();
+		channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+		channel.bind(new InetSocketAddress(port));
+		channel.configureBlocking(false);
+
+		tcpChannel = ServerSocketChannel.open();
+		tcpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		try {
+			tcpChannel.bind(new InetSocketAddress(getPort()));
+		} catch (IOException e) {
+			if (port != 0) {
+				channel.close();
+				tcpChannel.close();
+				throw e;
+			}
+			tcpChannel.bind(new InetSocketAddress(0));
+		}
+		tcpChannel.configureBlocking(false);
+
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+		tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Sets the log that receives errors of the server thread, they are printed to System.err by default
+	 * @param log the log
+	 * @return this server
+	 */
+	public EmofaniServer setLog(MessageLog log) {
+		this.log = log;
+		return this;
+	}
+
+	/**
+	 * Starts the server thread
+	 * @return this server
+	 */
+	public synchronized EmofaniServer start() {
+		if (thread == null) {
+			thread = new Thread(this::serve, "emofani-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Stops the server thread and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		selector.close();
+		channel.close();
+		tcpChannel.close();
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+		}
+		if (thread != null) {
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * @return the port the server accepts TCP connections on, the same as getPort() unless that was taken
+	 */
+	public int getTcpPort() throws IOException {
+		return ((InetSocketAddress) tcpChannel.getLocalAddress()).getPort();
+	}
+
+	public int getArousal() {
+		return arousal;
+	}
+
+	public int getPleasure() {
+		return pleasure;
+	}
+
+	public int getBlush() {
+		return blush;
+	}
+
+	public int getGazeX() {
+		return gazeX;
+	}
+
+	public int getGazeY() {
+		return gazeY;
+	}
+
+	public int getGazeZ() {
+		return gazeZ;
+	}
+
+	public boolean isTalking() {
+		return talking;
+	}
+
+	public boolean isIdle() {
+		return idle;
+	}
+
+	/**
+	 * @return the mouth openness streamed while talking, -1 if none has been sent since talking started
+	 */
+	public int getMouth() {
+		return mouth;
+	}
+
+	/**
+	 * @return number of received messages
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * @return number of messages answered with status OK
+	 */
+	public long getOkCount() {
+		return answeredOk.get();
+	}
+
+	/**
+	 * @return number of messages answered with status ERROR, including dropped messages
+	 */
+	public long getErrorCount() {
+		return answeredError.get();
+	}
+
+	/**
+	 * @return number of messages dropped because they arrived out of order
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return number of received messages in the binary format
+	 */
+	public long getBinaryCount() {
+		return binary.get();
+	}
+
+	/**
+	 * Runs a stand-alone server until the process is killed.
+	 * @param args optional port (default: 11000)
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		EmofaniServer server = new EmofaniServer(port).start();
+		System.out.println("Emofani stand-in listening on UDP port " + server.getPort() + " and TCP port "
+				+ server.getTcpPort());
+		server.thread.join();
+	}
+
+	private void serve() {
+		try {
+			while (selector.isOpen()) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (key.channel() == channel) {
+						receive();
+					} else if (key.channel() == tcpChannel) {
+						accept();
+					} else {
+						serve(key);
+					}
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// closed
+		} catch (IOException e) {
+			if (channel.isOpen()) {
+				log.print("Error: the server stopped: " + e.getMessage());
+			}
+		} finally {
+			for (Connection connection : connections) {
+				closeQuietly(connection.channel);
+			}
+			connections.clear();
+		}
+	}
+
+	/**
+	 * Answers all waiting datagrams
+	 */
+	private void receive() throws IOException {
+		connection = null;
+		while (true) {
+			in.clear();
+			SocketAddress sender = channel.receive(in);
+			if (sender == null) {
+				break;
+			}
+			in.flip();
+			received.incrementAndGet();
+			handle(in, sender);
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel accepted;
+		while ((accepted = tcpChannel.accept()) != null) {
+			accepted.configureBlocking(false);
+			accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			Connection connection = new Connection(accepted);
+			connections.add(connection);
+			accepted.register(selector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	/**
+	 * Reads the complete frames of a connection, answers them and writes the answers back together. A connection with
+	 * an invalid frame is closed.
+	 */
+	private void serve(SelectionKey key) {
+		Connection connection = (Connection) key.attachment();
+		this.connection = connection;
+		try {
+			if (key.isReadable()) {
+				if (connection.channel.read(connection.in) < 0) {
+					throw new IOException("closed by client");
+				}
+				ByteBuffer frames = connection.in;
+				frames.flip();
+				while (frames.remaining() >= 4) {
+					int start = frames.position(), length = frames.getInt(start);
+					if (length < 0 || length > TcpTransport.MAX_FRAME_LENGTH) {
+						throw new IOException("invalid frame length " + length);
+					}
+					if (frames.remaining() < length + 4) {
+						break;
+					}
+					int limit = frames.limit();
+					frames.position(start + 4).limit(start + 4 + length);
+					received.incrementAndGet();
+					handle(frames, null);
+					frames.limit(limit).position(start + 4 + length);
+				}
+				frames.compact();
+			}
+
+			ByteBuffer out = connection.out;
+			out.flip();
+			connection.channel.write(out);
+			out.compact();
+			// stop reading from a client that doesn't read its status messages
+			key.interestOps(((out.position() > 0) ? SelectionKey.OP_WRITE : 0)
+					| ((out.position() < MAX_PENDING_OUTPUT) ? SelectionKey.OP_READ : 0));
+		} catch (IOException | CancelledKeyException e) {
+			// CancelledKeyException: the server has been closed in the meantime
+			key.cancel();
+			connections.remove(connection);
+			closeQuietly(connection.channel);
+		}
+	}
+
+	/**
+	 * Interprets a message and answers it, like FaceAnimator.HandleMessage()
+	 * @param sender address the datagram came from, null for TCP
+	 */
+	private void handle(ByteBuffer message, SocketAddress sender) throws IOException {
+		if (BinaryProtocol.isBinary(message)) {
+			handleBinary(message, sender);
+			return;
+		}
+
+		long timestamp = -1;
+		int port = -1, hostStart = -1, hostEnd = -1, dataStart = -1, dataEnd = -1;
+		boolean hasTimestamp = false, invalid = false;
+
+		// segments are separated by ';', keys and values by ':'
+		int end = message.limit();
+		for (int i = message.position(); i < end;) {
+			int segmentEnd = Ascii.indexOf(message, (byte) ';', i, end);
+			if (segmentEnd - i >= 2 && message.get(i + 1) == ':') {
+				int valueStart = i + 2;
+				switch (message.get(i)) {
+				case 't':
+					hasTimestamp = Ascii.isNumber(message, valueStart, segmentEnd);
+					timestamp = hasTimestamp ? Ascii.parseNumber(message, valueStart, segmentEnd) : -1;
+					invalid |= !hasTimestamp;
+					break;
+				case 's':
+					hostStart = valueStart;
+					hostEnd = segmentEnd;
+					break;
+				case 'p':
+					if (Ascii.isNumber(message, valueStart, segmentEnd)) {
+						port = (int) Ascii.parseNumber(message, valueStart, segmentEnd);
+					} else {
+						invalid = true;
+					}
+					break;
+				case 'd':
+					dataStart = valueStart;
+					dataEnd = segmentEnd;
+					break;
+				}
+			} else {
+				invalid = true;
+			}
+			i = segmentEnd + 1;
+		}
+
+		String error = null;
+		if (invalid) {
+			error = "Message has an invalid format. ";
+		} else {
+			StringBuilder inputError = new StringBuilder();
+			if (port < 0) {
+				inputError.append("p (port to answer to) is missing. ");
+			}
+			if (hostStart < 0) {
+				inputError.append("s (hostname to answer to) is missing. ");
+			}
+			if (!hasTimestamp) {
+				inputError.append("t (message id or timestamp) is missing. ");
+			}
+			if (timestamp < lastInputId) {
+				inputError.append("Dropped because t is smaller than previous timestamp. ");
+				dropped.incrementAndGet();
+			}
+			if (dataStart < 0) {
+				inputError.append("d (data with key=value) is missing. ");
+			}
+			if (inputError.length() > 0) {
+				error = inputError.toString();
+			}
+		}
+
+		// status messages of TCP clients go back on the connection
+		if (connection == null
+				&& !setReplyAddress(message, hostStart, hostEnd, (port < 0) ? FALLBACK_SEND_PORT : port)) {
+			return;
+		}
+
+		if (error == null) {
+			error = applyData(message, dataStart, dataEnd);
+		}
+
+		if (error != null) {
+			sendError(timestamp, error);
+		} else {
+			lastInputId = timestamp;
+			sendOk(timestamp);
+		}
+	}
+
+	/**
+	 * Interprets a message in the binary format and answers it in that format. The status is sent to the port in the
+	 * message at the address the message came from.
+	 */
+	private void handleBinary(ByteBuffer message, SocketAddress sender) throws IOException {
+		binary.incrementAndGet();
+		int start = message.position(), length = message.remaining();
+		int header = BinaryProtocol.MESSAGE_HEADER_LENGTH;
+		long timestamp = (length >= 10) ? message.getLong(start + 2) : FaceStatus.NO_ID;
+		int count = (length >= header) ? message.get(start + header - 1) & 0xff : 0;
+
+		String error = null;
+		if (message.get(start + 1) != BinaryProtocol.VERSION) {
+			error = "Unsupported protocol version " + message.get(start + 1) + ". ";
+		} else if (length < header || length != header + count * BinaryProtocol.PARAMETER_LENGTH) {
+			error = "Message has an invalid format. ";
+		} else if (timestamp < lastInputId) {
+			error = "Dropped because t is smaller than previous timestamp. ";
+			dropped.incrementAndGet();
+		}
+
+		if (connection == null) {
+			if (length < header || !(sender instanceof InetSocketAddress)) {
+				return;
+			}
+			InetAddress host = ((InetSocketAddress) sender).getAddress();
+			int port = message.getShort(start + 10) & 0xffff;
+			if (replyAddress == null || port != replyAddress.getPort() || !host.equals(replyAddress.getAddress())) {
+				replyAddress = new InetSocketAddress(host, port);
+			}
+			// the address doesn't belong to an s of a text message
+			replyHostLength = -1;
+		}
+
+		if (error == null) {
+			error = applyBinary(message, start + header, count);
+		}
+
+		if (error != null) {
+			BinaryProtocol.encodeError(out, timestamp, error);
+			answeredError.incrementAndGet();
+			reply();
+		} else {
+			lastInputId = timestamp;
+			BinaryProtocol.encodeOk(out, timestamp, arousal, pleasure, blush, gazeX, gazeY, gazeZ, talking, idle);
+			answeredOk.incrementAndGet();
+			reply();
+		}
+	}
+
+	/**
+	 * Applies all parameters of a binary message or none of them.
+	 * @return null if all parameters were applied, otherwise the error
+	 */
+	private String applyBinary(ByteBuffer message, int start, int count) {
+		save();
+		idle = false;
+		for (int i = 0; i < count; i++) {
+			int position = start + i * BinaryProtocol.PARAMETER_LENGTH;
+			String error = setParameter(message.get(position), message.getInt(position + 1));
+			if (error != null) {
+				restore();
+				return error;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets a single parameter of a binary message
+	 * @param value fixed point value
+	 * @return null if the parameter was set, otherwise the error
+	 */
+	private String setParameter(byte id, int value) {
+		int number = (int) Math.rint(value / (double) BinaryProtocol.ONE);
+		switch (id) {
+		case BinaryProtocol.AROUSAL:
+			arousal = number;
+			break;
+		case BinaryProtocol.PLEASURE:
+			pleasure = number;
+			break;
+		case BinaryProtocol.BLUSH:
+			blush = number;
+			break;
+		case BinaryProtocol.GAZE_X:
+			gazeX = number;
+			break;
+		case BinaryProtocol.GAZE_Y:
+			gazeY = number;
+			break;
+		case BinaryProtocol.GAZE_Z:
+			gazeZ = number;
+			break;
+		case BinaryProtocol.TALKING:
+			setTalking(value != 0);
+			break;
+		case BinaryProtocol.IDLE:
+			idle = value != 0;
+			if (idle) {
+				setTalking(false);
+			}
+			break;
+		case BinaryProtocol.MOUTH:
+			if (number < 0 || number > 100) {
+				return "mouth has to be between 0 and 100";
+			}
+			mouth = number;
+			break;
+		default:
+			int expression = id - BinaryProtocol.EXPRESSION;
+			if (expression < 0 || expression >= EXPRESSIONS.length) {
+				return "Unknown parameter id " + id;
+			}
+			setExpression(expression, value / (double) BinaryProtocol.ONE / 100.0);
+		}
+		return null;
+	}
+
+	private void save() {
+		saved[0] = arousal;
+		saved[1] = pleasure;
+		saved[2] = blush;
+		saved[3] = gazeX;
+		saved[4] = gazeY;
+		saved[5] = gazeZ;
+		saved[6] = talking ? 1 : 0;
+		saved[7] = idle ? 1 : 0;
+		saved[8] = mouth;
+	}
+
+	private void restore() {
+		arousal = saved[0];
+		pleasure = saved[1];
+		blush = saved[2];
+		gazeX = saved[3];
+		gazeY = saved[4];
+		gazeZ = saved[5];
+		talking = saved[6] != 0;
+		idle = saved[7] != 0;
+		mouth = saved[8];
+	}
+
+	/**
+	 * Applies all key=value pairs of the data part or none of them.
+	 * @return null if all pairs were applied, otherwise the error
+	 */
+	private String applyData(ByteBuffer message, int start, int end) {
+		save();
+
+		// idle will be set to false for every message, like in Emofani
+		idle = false;
+
+		for (int i = start; i <= end;) {
+			int pairEnd = Ascii.indexOf(message, (byte) ',', i, end);
+			int separator = Ascii.indexOf(message, (byte) '=', i, pairEnd);
+			String error = (separator < pairEnd && Ascii.indexOf(message, (byte) '=', separator + 1, pairEnd) == pairEnd)
+					? setParameter(message, i, separator, separator + 1, pairEnd)
+					: "Malformed data '" + Ascii.text(message, i, pairEnd) + "'";
+			if (error != null) {
+				restore();
+				return error;
+			}
+			i = pairEnd + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * Sets a single parameter
+	 * @return null if the parameter was set, otherwise the error
+	 */
+	private String setParameter(ByteBuffer m, int keyStart, int keyEnd, int start, int end) {
+		boolean isNumber = Ascii.isNumber(m, start, end);
+		int number = isNumber ? (int) Ascii.parseNumber(m, start, end) : 0;
+		// bool.Parse() ignores the case
+		boolean bool = Ascii.equalIgnoreCase(m, start, end, TRUE);
+		boolean isBoolean = bool || Ascii.equalIgnoreCase(m, start, end, FALSE);
+
+		if (Ascii.equal(m, keyStart, keyEnd, AROUSAL) && isNumber) {
+			arousal = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, PLEASURE) && isNumber) {
+			pleasure = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, GAZE_X) && isNumber) {
+			gazeX = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, GAZE_Y) && isNumber) {
+			gazeY = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, GAZE_Z) && isNumber) {
+			gazeZ = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, BLUSH) && isNumber) {
+			blush = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, TALKING) && isBoolean) {
+			setTalking(bool);
+		} else if (Ascii.equal(m, keyStart, keyEnd, IDLE) && isBoolean) {
+			idle = bool;
+			if (bool) {
+				setTalking(false);
+			}
+		} else if (Ascii.equal(m, keyStart, keyEnd, MOUTH) && isNumber) {
+			if (number < 0 || number > 100) {
+				return "mouth has to be between 0 and 100";
+			}
+			mouth = number;
+		} else if (Ascii.equal(m, keyStart, keyEnd, EXPRESSION)) {
+			return setExpression(m, start, end);
+		} else if (Ascii.equal(m, keyStart, keyEnd, PROTOCOL)) {
+			// the binary format is always understood, the handshake only tells the client so
+			return Ascii.equal(m, start, end, BINARY1) ? null : "Unsupported protocol '" + Ascii.text(m, start, end) + "'";
+		} else if (Ascii.equal(m, keyStart, keyEnd, AROUSAL) || Ascii.equal(m, keyStart, keyEnd, PLEASURE)
+				|| Ascii.equal(m, keyStart, keyEnd, GAZE_X) || Ascii.equal(m, keyStart, keyEnd, GAZE_Y)
+				|| Ascii.equal(m, keyStart, keyEnd, GAZE_Z) || Ascii.equal(m, keyStart, keyEnd, BLUSH)
+				|| Ascii.equal(m, keyStart, keyEnd, TALKING) || Ascii.equal(m, keyStart, keyEnd, IDLE)
+				|| Ascii.equal(m, keyStart, keyEnd, MOUTH)) {
+			return "Invalid value '" + Ascii.text(m, start, end) + "' for " + Ascii.text(m, keyStart, keyEnd);
+		} else {
+			return "Unknown parameter '" + Ascii.text(m, keyStart, keyEnd) + "'";
+		}
+		return null;
+	}
+
+	/**
+	 * The mouth openness only applies while talking, like in FaceAnimator
+	 */
+	private void setTalking(boolean value) {
+		talking = value;
+		if (!value) {
+			mouth = -1;
+		}
+	}
+
+	/**
+	 * Interprets a value in the format "expressionname%intensity", like FaceAnimator.SetExpression()
+	 */
+	private String setExpression(ByteBuffer m, int start, int end) {
+		int separator = Ascii.indexOf(m, (byte) '%', start, end);
+		if (separator == end || !Ascii.isNumber(m, separator + 1, end)) {
+			return "Expression error: '" + Ascii.text(m, start, end) + "' is not in the format expression%intensity ";
+		}
+		for (int i = 0; i < EXPRESSIONS.length; i++) {
+			if (Ascii.equal(m, start, separator, EXPRESSIONS[i])) {
+				setExpression(i, Ascii.parseNumber(m, separator + 1, end) / 100.0);
+				return null;
+			}
+		}
+		return "Expression error: The given key was not present in the dictionary. ";
+	}
+
+	/**
+	 * @param expression index of the expression
+	 * @param intensity 0 to 1
+	 */
+	private void setExpression(int expression, double intensity) {
+		// Mathf.RoundToInt() rounds halves to the even number, like rint()
+		arousal = (int) Math.rint(EXPRESSION_AROUSAL[expression] * intensity);
+		pleasure = (int) Math.rint(EXPRESSION_PLEASURE[expression] * intensity);
+	}
+
+	/**
+	 * Resolves the address status messages are sent to, unless it is the same as for the previous message.
+	 * @return false if the address can't be resolved
+	 */
+	private boolean setReplyAddress(ByteBuffer message, int hostStart, int hostEnd, int port) {
+		int length = (hostStart < 0) ? 0 : hostEnd - hostStart;
+		boolean same = port == replyPort && length == replyHostLength && length <= replyHost.length;
+		for (int i = 0; same && i < length; i++) {
+			same = replyHost[i] == message.get(hostStart + i);
+		}
+		if (same) {
+			return true;
+		}
+
+		try {
+			InetAddress host = (length == 0) ? InetAddress.getLoopbackAddress()
+					: InetAddress.getByName(Ascii.text(message, hostStart, hostEnd));
+			replyAddress = new InetSocketAddress(host, port);
+		} catch (IOException e) {
+			replyHostLength = -1;
+			return false;
+		}
+		for (int i = 0; i < length && i < replyHost.length; i++) {
+			replyHost[i] = message.get(hostStart + i);
+		}
+		replyHostLength = length;
+		replyPort = port;
+		return true;
+	}
+
+	/**
+	 * Forms an OK status message and sends it
+	 */
+	private void sendOk(long id) throws IOException {
+		out.clear();
+		putText("status:OK;");
+		putId(id);
+		putText("arousal:");
+		Ascii.putNumber(out, arousal);
+		putText(";pleasure:");
+		Ascii.putNumber(out, pleasure);
+		putText(";blush:");
+		Ascii.putNumber(out, blush);
+		putText(";gazex:");
+		Ascii.putNumber(out, gazeX);
+		putText(";gazey:");
+		Ascii.putNumber(out, gazeY);
+		putText(";gazez:");
+		Ascii.putNumber(out, gazeZ);
+		putText(talking ? ";talking:true" : ";talking:false");
+		putText(idle ? ";idle:true" : ";idle:false");
+		out.flip();
+		answeredOk.incrementAndGet();
+		reply();
+	}
+
+	/**
+	 * Forms an error status message and sends it
+	 */
+	private void sendError(long id, String error) throws IOException {
+		out.clear();
+		putText("status:ERROR;");
+		putId(id);
+		putText("error:\"");
+		putText(error.replace('"', '\''));
+		putText("\"");
+		out.flip();
+		answeredError.incrementAndGet();
+		reply();
+	}
+
+	/**
+	 * Sends the status message in out to the reply address, or queues it with its length for the connection
+	 */
+	private void reply() throws IOException {
+		if (connection == null) {
+			channel.send(out, replyAddress);
+			return;
+		}
+		ByteBuffer pending = connection.out;
+		if (pending.remaining() < out.remaining() + 4) {
+			ByteBuffer larger = ByteBuffer.allocate(
+					Math.max(pending.capacity() * 2, pending.position() + out.remaining() + 4));
+			pending.flip();
+			larger.put(pending);
+			connection.out = pending = larger;
+		}
+		pending.putInt(out.remaining());
+		pending.put(out);
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// nothing left to do
+		}
+	}
+
+	private void putId(long id) throws IOException {
+		if (id >= 0) {
+			putText("t:");
+			Ascii.putNumber(out, id);
+			out.put((byte) ';');
+		}
+	}
+
+	private void putText(String text) {
+		for (int i = 0, length = Math.min(text.length(), out.remaining()); i < length; i++) {
+			out.put((byte) text.charAt(i));
+		}
+	}
+
+}
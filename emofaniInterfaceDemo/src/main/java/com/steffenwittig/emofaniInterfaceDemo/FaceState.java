@@ -0,0 +1,152 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+/**
+ * Mutable, reusable holder for the parameters of a status message. StatusParser writes into it without allocating
+ * objects, so one instance can be used for every message a thread receives. Use FaceStatus for a snapshot that can
+ * be passed to other threads.
+ *
+ * Which parameters were contained in the last parsed message is stored as a bitmask of the field constants.
+ */
+public class FaceState {
+
+	public static final int STATUS = 1, ID = 1 << 1, AROUSAL = 1 << 2, PLEASURE = 1 << 3, BLUSH = 1 << 4,
+			GAZE_X = 1 << 5, GAZE_Y = 1 << 6, GAZE_Z = 1 << 7, TALKING = 1 << 8, IDLE = 1 << 9, ERROR = 1 << 10;
+
+	/** Fields Emofani sends with every OK status */
+	public static final int OK_FIELDS = STATUS | AROUSAL | PLEASURE | BLUSH | GAZE_X | GAZE_Y | GAZE_Z | TALKING
+			| IDLE;
+
+	/** Longest error description that is kept, longer ones are cut off */
+	public static final int MAX_ERROR_LENGTH = 512;
+
+	long id;
+	boolean ok;
+	int arousal, pleasure, blush, gazeX, gazeY, gazeZ;
+	boolean talking, idle;
+	final byte[] error = new byte[MAX_ERROR_LENGTH];
+	int errorLength;
+	int fields, invalidFields;
+
+	/**
+	 * Resets all parameters, done by StatusParser before every message
+	 */
+	public void clear() {
+		id = FaceStatus.NO_ID;
+		ok = false;
+		arousal = pleasure = blush = gazeX = gazeY = gazeZ = 0;
+		talking = idle = false;
+		errorLength = 0;
+		fields = invalidFields = 0;
+	}
+
+	/**
+	 * @return bitmask of the fields contained in the message
+	 */
+	public int getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return bitmask of the fields that were contained in the message but couldn't be interpreted
+	 */
+	public int getInvalidFields() {
+		return invalidFields;
+	}
+
+	/**
+	 * @param required bitmask of fields, e.g. OK_FIELDS
+	 * @return bitmask of the required fields that are missing or invalid, 0 if all of them are there
+	 */
+	public int getMissingFields(int required) {
+		return required & ~fields;
+	}
+
+	/**
+	 * @param field a field constant
+	 * @return true if the field was contained in the message
+	 */
+	public boolean has(int field) {
+		return (fields & field) == field;
+	}
+
+	/**
+	 * @return id (t) of the message this status answers or FaceStatus.NO_ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return true if Emofani answered with status OK
+	 */
+	public boolean isOk() {
+		return ok;
+	}
+
+	public int getArousal() {
+		return arousal;
+	}
+
+	public int getPleasure() {
+		return pleasure;
+	}
+
+	public int getBlush() {
+		return blush;
+	}
+
+	public int getGazeX() {
+		return gazeX;
+	}
+
+	public int getGazeY() {
+		return gazeY;
+	}
+
+	public int getGazeZ() {
+		return gazeZ;
+	}
+
+	public boolean isTalking() {
+		return talking;
+	}
+
+	public boolean isIdle() {
+		return idle;
+	}
+
+	/**
+	 * @return the error description of an ERROR status, null if there is none. This allocates a new String.
+	 */
+	public String getError() {
+		if (!has(ERROR)) {
+			return null;
+		}
+		StringBuilder text = new StringBuilder(errorLength);
+		for (int i = 0; i < errorLength; i++) {
+			text.append((char) (error[i] & 0xff));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the names of the fields in a bitmask, e.g. for error messages.
+	 * @param mask bitmask of field constants
+	 * @return comma separated names as they appear in status messages
+	 */
+	public static String describe(int mask) {
+		String[] names = { "status", "t", "arousal", "pleasure", "blush", "gazex", "gazey", "gazez", "talking",
+				"idle", "error" };
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			if ((mask & (1 << i)) != 0) {
+				if (text.length() > 0) {
+					text.append(", ");
+				}
+				text.append(names[i]);
+			}
+		}
+		return text.toString();
+	}
+
+}
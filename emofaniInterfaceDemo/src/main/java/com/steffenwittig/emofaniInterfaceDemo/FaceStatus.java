@@ -0,0 +1,160 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable snapshot of a status message received from Emofani.
+ *
+ * status:[status];t:[id];arousal:[arousal];pleasure:[pleasure];blush:[blush];gazex:[gazex];gazey:[gazey];
+ * gazez:[gazez];talking:[talking];idle:[idle]
+ */
+public class FaceStatus {
+
+	/** Id of a status message that didn't answer a specific message (or came from an older Emofani) */
+	public static final long NO_ID = -1;
+
+	// written lazily if the message wasn't kept; every thread writes the same text
+	private String data;
+	private final long id;
+	private final boolean ok;
+	private final int arousal, pleasure, blush, gazeX, gazeY, gazeZ;
+	private final boolean talking, idle;
+	private final String error;
+	private final int fields;
+
+	/**
+	 * Creates a snapshot of a parsed status message
+	 * @param state the parameters read by StatusParser
+	 * @param data the status message as received via UDP, null if it isn't needed. getData() writes it from the
+	 *            parameters then.
+	 */
+	public FaceStatus(FaceState state, String data) {
+		this.data = data;
+		this.id = state.getId();
+		this.ok = state.isOk();
+		this.arousal = state.getArousal();
+		this.pleasure = state.getPleasure();
+		this.blush = state.getBlush();
+		this.gazeX = state.getGazeX();
+		this.gazeY = state.getGazeY();
+		this.gazeZ = state.getGazeZ();
+		this.talking = state.isTalking();
+		this.idle = state.isIdle();
+		this.error = state.getError();
+		this.fields = state.getFields();
+	}
+
+	/**
+	 * Interprets a status message. Missing or malformed parameters are left at their defaults.
+	 * @param data the status message as received via UDP
+	 * @return the status
+	 */
+	public static FaceStatus parse(String data) {
+		FaceState state = new FaceState();
+		StatusParser.parse(ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII)), state);
+		return new FaceStatus(state, data);
+	}
+
+	/**
+	 * @return the status message this snapshot was created from. If it wasn't kept, e.g. for a binary status or
+	 *         while nothing is logged, the status is written in the text format as Emofani would have sent it.
+	 */
+	public String getData() {
+		String text = data;
+		if (text == null) {
+			data = text = format();
+		}
+		return text;
+	}
+
+	private String format() {
+		StringBuilder text = new StringBuilder(128);
+		text.append(ok ? "status:OK;" : "status:ERROR;");
+		if (id != NO_ID) {
+			text.append("t:").append(id).append(';');
+		}
+		if (ok) {
+			text.append("arousal:").append(arousal).append(";pleasure:").append(pleasure).append(";blush:")
+					.append(blush).append(";gazex:").append(gazeX).append(";gazey:").append(gazeY).append(";gazez:")
+					.append(gazeZ).append(";talking:").append(talking).append(";idle:").append(idle);
+		} else {
+			text.append("error:\"").append(error).append('"');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return id (t) of the message this status answers or NO_ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return true if Emofani answered with status OK
+	 */
+	public boolean isOk() {
+		return ok;
+	}
+
+	public int getArousal() {
+		return arousal;
+	}
+
+	public int getPleasure() {
+		return pleasure;
+	}
+
+	public int getBlush() {
+		return blush;
+	}
+
+	public int getGazeX() {
+		return gazeX;
+	}
+
+	public int getGazeY() {
+		return gazeY;
+	}
+
+	public int getGazeZ() {
+		return gazeZ;
+	}
+
+	public boolean isTalking() {
+		return talking;
+	}
+
+	public boolean isIdle() {
+		return idle;
+	}
+
+	/**
+	 * @return bitmask of the FaceState field constants contained in the message
+	 */
+	public int getFields() {
+		return fields;
+	}
+
+	/**
+	 * @param required bitmask of FaceState field constants, e.g. FaceState.OK_FIELDS
+	 * @return bitmask of the required fields that are missing or invalid, 0 if all of them are there
+	 */
+	public int getMissingFields(int required) {
+		return required & ~fields;
+	}
+
+	/**
+	 * @return the error description of an ERROR status, null otherwise
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return getData();
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+/**
+ * Receives every status message of an EmofaniClient or the Communicator: the answers to sent messages as well as
+ * status messages Emofani sends on its own (e.g. in idle mode) or that arrive after their message has timed out.
+ * Every status is parsed once and handed to all listeners on the executor they were registered with.
+ */
+@FunctionalInterface
+public interface FaceStatusListener {
+
+	/**
+	 * @param status a status message received from Emofani, OK or ERROR
+	 */
+	void statusReceived(FaceStatus status);
+
+}
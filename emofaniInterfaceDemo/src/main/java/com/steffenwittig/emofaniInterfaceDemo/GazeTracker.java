@@ -0,0 +1,320 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets the face look at positions from an external source, e.g. the head positions of a person tracker. Positions are
+ * read as lines of two or three numbers ("x y z" or "x,y,z", in the gaze coordinates of Emofani) from a UDP port,
+ * stdin or a named pipe.
+ *
+ * Every axis is smoothed by an AlphaBetaFilter, which also predicts where the target will be a little ahead, to make up
+ * for the delay of the tracker and the network. At a fixed rate the predicted position is compared to the one last
+ * sent; axes that moved less than the deadband are left out, the others are sent together in one message. If nothing
+ * moved, nothing is sent.
+ */
+public class GazeTracker {
+
+	private static final String USAGE = "Usage: java -jar emofaniInterfaceDemo.jar --gaze [options]\n"
+			+ "Reads positions (\"x y z\" or \"x,y,z\", z is optional) and lets the face look at them.\n"
+			+ "  --source <source>    stdin, udp:<port> or the path of a named pipe (default: stdin)\n"
+			+ "  --host <host>        host where Emofani is running (default: localhost)\n"
+			+ "  --port <port>        port Emofani is listening on (default: 11000)\n"
+			+ "  --input-port <port>  port for status messages (default: 0, a free port)\n"
+			+ "  --rate <n>           messages per second at most (default: 30)\n"
+			+ "  --deadband <cm>      smallest movement that is sent (default: 2)\n"
+			+ "  --alpha <a>          position smoothing, 0 to 1 (default: 0.5)\n"
+			+ "  --beta <b>           velocity smoothing, 0 to 1 (default: 0.1)\n"
+			+ "  --lead <ms>          how far ahead the position is predicted (default: 50)";
+
+	private static final String[] PARAMETERS = { "gazex", "gazey", "gazez" };
+
+	/** positions aren't extrapolated further than this past the last measurement, in case the tracker stops */
+	private static final long MAX_EXTRAPOLATION = TimeUnit.MILLISECONDS.toNanos(250);
+
+	private final EmofaniClient client;
+	private final AlphaBetaFilter[] filters = new AlphaBetaFilter[PARAMETERS.length];
+	private final double deadband;
+	private final long lead;
+
+	private final int[] sent = new int[PARAMETERS.length];
+	private final boolean[] hasSent = new boolean[PARAMETERS.length];
+	private ScheduledExecutorService ticker;
+
+	private final AtomicLong positions = new AtomicLong(), malformed = new AtomicLong(),
+			messages = new AtomicLong(), timeouts = new AtomicLong();
+
+	/**
+	 * @param client sends the gaze coordinates
+	 * @param alpha position smoothing of the AlphaBetaFilter
+	 * @param beta velocity smoothing of the AlphaBetaFilter
+	 * @param deadband smallest change of an axis that is sent
+	 * @param lead milliseconds the position is predicted ahead
+	 */
+	public GazeTracker(EmofaniClient client, double alpha, double beta, double deadband, int lead) {
+		this.client = client;
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = new AlphaBetaFilter(alpha, beta);
+		}
+		this.deadband = deadband;
+		this.lead = TimeUnit.MILLISECONDS.toNanos(lead);
+	}
+
+	/**
+	 * Adds a measured position
+	 * @param x gaze x coordinate
+	 * @param y gaze y coordinate
+	 * @param z gaze z coordinate or NaN if it isn't tracked
+	 */
+	public synchronized void offer(double x, double y, double z) {
+		long now = System.nanoTime();
+		filters[0].update(x, now);
+		filters[1].update(y, now);
+		if (!Double.isNaN(z)) {
+			filters[2].update(z, now);
+		}
+		positions.incrementAndGet();
+	}
+
+	/**
+	 * Adds a position in the format "x y z" or "x,y,z", z is optional
+	 * @param line the position
+	 * @return false if the line isn't a position
+	 */
+	public boolean offer(String line) {
+		String[] values = line.trim().split("[\\s,;]+");
+		try {
+			if (values.length == 2 || values.length == 3) {
+				offer(Double.parseDouble(values[0]), Double.parseDouble(values[1]),
+						(values.length == 3) ? Double.parseDouble(values[2]) : Double.NaN);
+				return true;
+			}
+		} catch (NumberFormatException e) {
+			// counted below
+		}
+		malformed.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Starts sending the predicted positions
+	 * @param rate ticks per second
+	 */
+	public synchronized void start(int rate) {
+		if (ticker == null) {
+			ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "emofani-gaze");
+				thread.setDaemon(true);
+				return thread;
+			});
+			ticker.scheduleAtFixedRate(this::send, 0, TimeUnit.SECONDS.toNanos(1) / rate, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Stops sending
+	 */
+	public synchronized void stop() {
+		if (ticker != null) {
+			ticker.shutdown();
+			ticker = null;
+		}
+	}
+
+	private void send() {
+		String data = tick(System.nanoTime());
+		if (data != null) {
+			messages.incrementAndGet();
+			client.sendData(data).whenComplete((status, error) -> {
+				if (error instanceof TimeoutException) {
+					timeouts.incrementAndGet();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Predicts the position and decides which axes have to be sent
+	 * @param now the current time, from System.nanoTime()
+	 * @return the data part of the message or null if no axis has moved more than the deadband
+	 */
+	synchronized String tick(long now) {
+		StringBuilder data = null;
+		for (int i = 0; i < filters.length; i++) {
+			if (!filters[i].isInitialized()) {
+				continue;
+			}
+			long time = Math.min(now + lead, filters[i].getTime() + MAX_EXTRAPOLATION);
+			int value = (int) Math.round(filters[i].predict(time));
+			if (hasSent[i] && (value == sent[i] || Math.abs(value - sent[i]) < deadband)) {
+				continue;
+			}
+			sent[i] = value;
+			hasSent[i] = true;
+			data = (data == null) ? new StringBuilder() : data.append(',');
+			data.append(PARAMETERS[i]).append('=').append(value);
+		}
+		return (data == null) ? null : data.toString();
+	}
+
+	/**
+	 * Reads positions line by line until the end of the stream
+	 */
+	public void read(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, EmofaniClient.ASCII));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (!line.trim().isEmpty()) {
+				offer(line);
+			}
+		}
+	}
+
+	/**
+	 * Receives positions on a UDP port until the thread is interrupted. A datagram may contain several lines.
+	 */
+	public void receive(int port) throws IOException {
+		try (DatagramChannel channel = DatagramChannel.open()) {
+			channel.bind(new InetSocketAddress(port));
+			ByteBuffer buffer = ByteBuffer.allocate(1024);
+			while (!Thread.currentThread().isInterrupted()) {
+				buffer.clear();
+				channel.receive(buffer);
+				buffer.flip();
+				for (String line : new String(buffer.array(), 0, buffer.limit(), EmofaniClient.ASCII).split("\n")) {
+					if (!line.trim().isEmpty()) {
+						offer(line);
+					}
+				}
+			}
+		}
+	}
+
+	public long getPositionCount() {
+		return positions.get();
+	}
+
+	public long getMalformedCount() {
+		return malformed.get();
+	}
+
+	public long getMessageCount() {
+		return messages.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	/**
+	 * Runs the gaze tracker
+	 * @param args options, see USAGE
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args, System.in, System.out));
+	}
+
+	/**
+	 * Runs the gaze tracker until the source ends
+	 * @param args options, see USAGE
+	 * @param in read if the source is stdin
+	 * @param out receives errors and the summary
+	 * @return 0 if the source ended, 1 for errors and 2 for invalid arguments
+	 */
+	static int run(String[] args, InputStream in, PrintStream out) {
+		EmofaniClient.Builder builder = EmofaniClient.builder().receivePort(0);
+		String source = "stdin";
+		int rate = 30, lead = 50;
+		double deadband = 2, alpha = 0.5, beta = 0.1;
+
+		GazeTracker tracker;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--source":
+					source = args[++i];
+					break;
+				case "--host":
+					builder.host(args[++i]);
+					break;
+				case "--port":
+					builder.sendPort(Integer.parseInt(args[++i]));
+					break;
+				case "--input-port":
+					builder.receivePort(Integer.parseInt(args[++i]));
+					break;
+				case "--rate":
+					rate = Integer.parseInt(args[++i]);
+					break;
+				case "--deadband":
+					deadband = Double.parseDouble(args[++i]);
+					break;
+				case "--alpha":
+					alpha = Double.parseDouble(args[++i]);
+					break;
+				case "--beta":
+					beta = Double.parseDouble(args[++i]);
+					break;
+				case "--lead":
+					lead = Integer.parseInt(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException(args[i]);
+				}
+			}
+			if (rate < 1 || deadband < 0 || lead < 0) {
+				throw new IllegalArgumentException("--rate, --deadband and --lead can't be negative");
+			}
+			tracker = new GazeTracker(builder.build(), alpha, beta, deadband, lead);
+		} catch (RuntimeException e) {
+			out.println("Invalid argument: " + e.getMessage());
+			out.println(USAGE);
+			return 2;
+		}
+
+		try {
+			tracker.client.open();
+			tracker.start(rate);
+			if (source.equals("stdin")) {
+				tracker.read(in);
+			} else if (source.startsWith("udp:")) {
+				tracker.receive(Integer.parseInt(source.substring(4)));
+			} else {
+				// a named pipe ends when its writer closes it, wait for the next writer
+				do {
+					try (InputStream pipe = new FileInputStream(source)) {
+						tracker.read(pipe);
+					}
+				} while (!Files.isRegularFile(Paths.get(source)));
+			}
+			// send the last position
+			tracker.stop();
+			tracker.send();
+		} catch (IOException | NumberFormatException e) {
+			out.println("Error: " + e.getMessage());
+			return 1;
+		} finally {
+			tracker.stop();
+			tracker.client.close();
+		}
+
+		out.printf("%d positions (%d malformed), %d messages sent, %d timed out%n", tracker.getPositionCount(),
+				tracker.getMalformedCount(), tracker.getMessageCount(), tracker.getTimeoutCount());
+		return 0;
+	}
+
+}
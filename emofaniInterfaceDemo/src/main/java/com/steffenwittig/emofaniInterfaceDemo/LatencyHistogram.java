@@ -0,0 +1,125 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, like HdrHistogram: values are grouped by their highest
+ * bit, and each group is split into 128 linear buckets. Every recorded value is therefore off by less than 1 % and the
+ * histogram needs a fixed amount of memory for values up to about an hour.
+ *
+ * Recording is lock-free, so several threads can record into the same histogram.
+ */
+public class LatencyHistogram {
+
+	/** number of bits of a value that are stored exactly */
+	private static final int SUB_BUCKET_BITS = 8;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+	/** values from 2^42 ns (73 minutes) on are recorded in the last bucket */
+	private static final int MAX_VALUE_BITS = 42;
+	private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+	private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), min = new AtomicLong(Long.MAX_VALUE),
+			max = new AtomicLong();
+
+	/**
+	 * Records a single value
+	 * @param nanos the latency, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		for (long current = min.get(); value < current && !min.compareAndSet(current, value); current = min.get()) {
+			// retry
+		}
+		for (long current = max.get(); value > current && !max.compareAndSet(current, value); current = max.get()) {
+			// retry
+		}
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the smallest recorded value or 0 if the histogram is empty
+	 */
+	public long getMin() {
+		return (count.get() == 0) ? 0 : min.get();
+	}
+
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of all recorded values or 0 if the histogram is empty
+	 */
+	public double getMean() {
+		long count = this.count.get();
+		return (count == 0) ? 0 : (double) sum.get() / count;
+	}
+
+	/**
+	 * Finds the value that the given percentage of the recorded values is smaller than or equal to.
+	 * @param percentile between 0 and 100, e.g. 99.9
+	 * @return the highest value of the bucket that contains the percentile, but not more than the largest recorded
+	 *         value, or 0 if the histogram is empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Removes all recorded values
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		min.set(Long.MAX_VALUE);
+		max.set(0);
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+	}
+
+	private static long highestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_HALF - 1;
+		return ((long) (index - shift * SUB_BUCKET_HALF + 1) << shift) - 1;
+	}
+
+}
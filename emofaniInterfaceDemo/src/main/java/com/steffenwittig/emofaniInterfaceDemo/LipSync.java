@@ -0,0 +1,163 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Moves the mouth of the face with the speech while a sound plays. The AmplitudeEnvelope of every sound resource is
+ * computed once in the background and kept. While a sound plays, the mouth openness at its current frame position is
+ * sent as "mouth=n" at a fixed rate, so the mouth stays in sync even if the playback starts late or stalls. Values
+ * are only sent if they differ noticeably from the last one.
+ *
+ * If the envelope of a sound isn't ready when it starts, the mouth starts moving as soon as it is, at the right
+ * position of the sound.
+ */
+public class LipSync {
+
+	public static final int DEFAULT_RATE = 30;
+
+	/** changes of the mouth openness that are smaller than this aren't sent, except for closing the mouth */
+	public static final int DEADBAND = 3;
+
+	/** the face blends to a new openness in about this time, so the sound is read this far ahead */
+	public static final int LOOKAHEAD_MILLIS = 50;
+
+	private final Consumer<String> sender;
+	private final MessageLog log;
+	private final long period;
+	private final ConcurrentHashMap<String, CompletableFuture<AmplitudeEnvelope>> envelopes =
+			new ConcurrentHashMap<String, CompletableFuture<AmplitudeEnvelope>>();
+	private final ExecutorService analyzer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "emofani-envelopes");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ScheduledExecutorService streamer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "emofani-lipsync");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private ScheduledFuture<?> streamTask;
+	private Stream stream;
+
+	/**
+	 * @param sender sends the data part of a message without waiting for the answer
+	 * @param rate messages per second while a sound plays
+	 * @param log receives errors of the analysis, may be null
+	 */
+	public LipSync(Consumer<String> sender, int rate, MessageLog log) {
+		if (rate < 1) {
+			throw new IllegalArgumentException("rate has to be positive");
+		}
+		this.sender = sender;
+		this.log = log;
+		this.period = TimeUnit.SECONDS.toNanos(1) / rate;
+	}
+
+	/**
+	 * Computes the envelopes of sounds in the background. Envelopes that are already known are skipped.
+	 * @param resources names of the resources, e.g. "/message_hello.wav"
+	 */
+	public void preload(Collection<String> resources) {
+		for (String resource : resources) {
+			getEnvelope(resource);
+		}
+	}
+
+	/**
+	 * Returns the envelope of a sound, it is computed in the background the first time. If that fails, the next call
+	 * tries again.
+	 * @param resource name of the resource, e.g. "/message_hello.wav"
+	 * @return the envelope, completed exceptionally if the resource can't be read
+	 */
+	public CompletableFuture<AmplitudeEnvelope> getEnvelope(final String resource) {
+		CompletableFuture<AmplitudeEnvelope> envelope = envelopes.computeIfAbsent(resource,
+				key -> CompletableFuture.supplyAsync(() -> {
+					try {
+						return AmplitudeEnvelope.analyze(key, AmplitudeEnvelope.DEFAULT_WINDOW_MILLIS);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e.getMessage(), e);
+					}
+				}, analyzer));
+		envelope.whenComplete((result, error) -> {
+			if (error != null && envelopes.remove(resource, envelope) && log != null) {
+				log.print("Error: " + error.getCause().getMessage());
+			}
+		});
+		return envelope;
+	}
+
+	/**
+	 * Starts streaming the mouth openness of a sound, a sound that is still streaming is stopped
+	 * @param resource name of the resource that is playing
+	 * @param framePosition the frame of the sound that is playing now, e.g. Clip::getLongFramePosition
+	 */
+	public synchronized void start(String resource, LongSupplier framePosition) {
+		stop();
+		stream = new Stream(getEnvelope(resource), framePosition);
+		streamTask = streamer.scheduleAtFixedRate(stream, 0, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops streaming. Nothing is sent once this returns, so a following "talking=false" is the last word; it also
+	 * resets the mouth.
+	 */
+	public synchronized void stop() {
+		if (streamTask != null) {
+			streamTask.cancel(false);
+			streamTask = null;
+			stream = null;
+		}
+	}
+
+	/**
+	 * @return true while the mouth openness of a sound is streamed
+	 */
+	public synchronized boolean isStreaming() {
+		return streamTask != null;
+	}
+
+	/**
+	 * Sends the mouth openness of one playing sound, only run by the streamer thread
+	 */
+	private class Stream implements Runnable {
+
+		private final CompletableFuture<AmplitudeEnvelope> envelope;
+		private final LongSupplier framePosition;
+		private int last = -1;
+
+		Stream(CompletableFuture<AmplitudeEnvelope> envelope, LongSupplier framePosition) {
+			this.envelope = envelope;
+			this.framePosition = framePosition;
+		}
+
+		@Override
+		public void run() {
+			if (!envelope.isDone() || envelope.isCompletedExceptionally()) {
+				return;
+			}
+			AmplitudeEnvelope sound = envelope.join();
+			int mouth = sound.getMouth(framePosition.getAsLong() + sound.toFrame(LOOKAHEAD_MILLIS));
+			if (last < 0 || Math.abs(mouth - last) >= DEADBAND || (mouth == 0 && last != 0)) {
+				synchronized (LipSync.this) {
+					if (stream != this) {
+						return;
+					}
+					sender.accept("mouth=" + mouth);
+				}
+				last = mouth;
+			}
+		}
+	}
+
+}
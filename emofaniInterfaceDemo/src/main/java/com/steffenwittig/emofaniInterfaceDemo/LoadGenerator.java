@@ -0,0 +1,251 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates several controllers sending to the same face at once. Every virtual sender has its own EmofaniClient and
+ * port, like a separate controller process, and sends messages at a fixed rate without waiting for the answers.
+ *
+ * The round trip time of every answered message is recorded in a LatencyHistogram. Timeouts, status:ERROR answers and
+ * messages emofani dropped because another sender used a newer t are counted separately. A summary is printed at the
+ * end of the run.
+ */
+public class LoadGenerator {
+
+	private static final String USAGE = "Usage: java -jar emofaniInterfaceDemo.jar --load [options]\n"
+			+ "  --host <host>        host where Emofani is running (default: localhost)\n"
+			+ "  --port <port>        port Emofani is listening on (default: 11000)\n"
+			+ "  --transport <t>      udp or tcp, every sender has its own connection (default: udp)\n"
+			+ "  --binary             send the compact binary format if Emofani accepts it\n"
+			+ "  --senders <n>        number of simulated controllers (default: 4)\n"
+			+ "  --rate <n>           messages per second of every sender (default: 100)\n"
+			+ "  --duration <s>       length of the run in seconds (default: 10)\n"
+			+ "  --timeout <ms>       time to wait for a status message (default: 1000)\n"
+			+ "  --threads <t>        platform or virtual receiver threads (default: platform, or emofani.threads)\n"
+			+ "  --mix <mix>          weights of the message kinds (default: expression=1,gaze=4,talking=1)";
+
+	private static final String[] EXPRESSIONS = { "neutral", "happy", "sad", "attentive", "sleepy", "frustrated",
+			"excited", "relaxed" };
+
+	/** message kinds, in the order of the weights */
+	private static final String[] KINDS = { "expression", "gaze", "talking" };
+
+	/** beginning of the error emofani answers messages with an older t with */
+	private static final String DROPPED = "Dropped because";
+
+	private final LatencyHistogram rtt = new LatencyHistogram();
+	private final AtomicLong sent = new AtomicLong(), ok = new AtomicLong(), errors = new AtomicLong(),
+			dropped = new AtomicLong(), timeouts = new AtomicLong(), failed = new AtomicLong(),
+			inFlight = new AtomicLong();
+
+	private String host = "localhost";
+	private int port = 11000, senders = 4, rate = 100, timeout = 1000;
+	private TransportType transport = TransportType.UDP;
+	private ThreadMode threadMode = ThreadMode.getDefault();
+	private boolean binary;
+	private double duration = 10;
+	private final int[] weights = { 1, 4, 1 };
+
+	/**
+	 * Runs the load generator
+	 * @param args options, see USAGE
+	 */
+	public static void main(String[] args) {
+		System.exit(new LoadGenerator().run(args, System.out));
+	}
+
+	/**
+	 * Runs the load generator
+	 * @param args options, see USAGE
+	 * @param out receives the summary
+	 * @return 0 if every message was answered with status OK, 1 if not and 2 for invalid arguments
+	 */
+	int run(String[] args, PrintStream out) {
+		try {
+			parseArguments(args);
+		} catch (RuntimeException e) {
+			out.println("Invalid argument: " + e.getMessage());
+			out.println(USAGE);
+			return 2;
+		}
+
+		List<EmofaniClient> clients = new ArrayList<EmofaniClient>();
+		ScheduledExecutorService executor = Executors.newScheduledThreadPool(
+				Math.min(senders, Runtime.getRuntime().availableProcessors()), runnable -> {
+					Thread thread = new Thread(runnable, "emofani-load");
+					thread.setDaemon(true);
+					return thread;
+				});
+		try {
+			for (int i = 0; i < senders; i++) {
+				EmofaniClient client = EmofaniClient.builder().host(host).sendPort(port).receivePort(0)
+						.transport(transport).binary(binary).timeout(timeout).threadMode(threadMode).build();
+				client.open();
+				clients.add(client);
+			}
+
+			out.printf("%d senders with %d messages/s each for %.1f s, %s receiver threads%n", senders, rate, duration,
+					threadMode.resolve().name().toLowerCase());
+			long period = TimeUnit.SECONDS.toNanos(1) / rate;
+			long start = System.nanoTime();
+			for (int i = 0; i < clients.size(); i++) {
+				EmofaniClient client = clients.get(i);
+				// spread the senders over the period, so they don't all send at the same moment
+				executor.scheduleAtFixedRate(() -> send(client), period * i / senders, period,
+						TimeUnit.NANOSECONDS);
+			}
+
+			Thread.sleep((long) (duration * 1000));
+			// shutdownNow() would interrupt a sender and close its channel while it writes
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+			long elapsed = System.nanoTime() - start;
+
+			// wait for the answers that are still on their way
+			long deadline = System.currentTimeMillis() + timeout + 1000;
+			while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			printSummary(out, elapsed);
+		} catch (IOException e) {
+			out.println("Error: " + e.getMessage());
+			return 1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		} finally {
+			executor.shutdownNow();
+			for (EmofaniClient client : clients) {
+				client.close();
+			}
+		}
+
+		return (ok.get() == sent.get()) ? 0 : 1;
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--host":
+				host = args[++i];
+				break;
+			case "--port":
+				port = Integer.parseInt(args[++i]);
+				break;
+			case "--transport":
+				transport = TransportType.valueOf(args[++i].toUpperCase());
+				break;
+			case "--binary":
+				binary = true;
+				break;
+			case "--senders":
+				senders = Integer.parseInt(args[++i]);
+				break;
+			case "--rate":
+				rate = Integer.parseInt(args[++i]);
+				break;
+			case "--duration":
+				duration = Double.parseDouble(args[++i]);
+				break;
+			case "--timeout":
+				timeout = Integer.parseInt(args[++i]);
+				break;
+			case "--threads":
+				threadMode = ThreadMode.valueOf(args[++i].toUpperCase());
+				break;
+			case "--mix":
+				parseMix(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException(args[i]);
+			}
+		}
+		if (senders < 1 || rate < 1 || duration <= 0 || timeout < 1) {
+			throw new IllegalArgumentException("--senders, --rate, --duration and --timeout have to be positive");
+		}
+	}
+
+	/**
+	 * Reads weights in the format kind=weight[,kind=weight...], kinds that aren't mentioned aren't sent.
+	 */
+	private void parseMix(String mix) {
+		int[] weights = new int[KINDS.length];
+		for (String pair : mix.split(",")) {
+			String[] keyValue = pair.split("=");
+			int kind = indexOf(KINDS, keyValue[0].trim());
+			if (kind < 0 || keyValue.length != 2 || Integer.parseInt(keyValue[1].trim()) < 0) {
+				throw new IllegalArgumentException("--mix " + pair);
+			}
+			weights[kind] = Integer.parseInt(keyValue[1].trim());
+		}
+		if (weights[0] + weights[1] + weights[2] == 0) {
+			throw new IllegalArgumentException("--mix " + mix);
+		}
+		System.arraycopy(weights, 0, this.weights, 0, weights.length);
+	}
+
+	/**
+	 * Sends a single message of a random kind and records its answer
+	 */
+	private void send(EmofaniClient client) {
+		final long start = System.nanoTime();
+		sent.incrementAndGet();
+		inFlight.incrementAndGet();
+		client.sendData(randomMessage()).whenComplete((status, error) -> {
+			if (error != null) {
+				(error instanceof TimeoutException ? timeouts : failed).incrementAndGet();
+			} else if (status.isOk()) {
+				rtt.record(System.nanoTime() - start);
+				ok.incrementAndGet();
+			} else if (status.getError() != null && status.getError().startsWith(DROPPED)) {
+				dropped.incrementAndGet();
+			} else {
+				errors.incrementAndGet();
+			}
+			inFlight.decrementAndGet();
+		});
+	}
+
+	private String randomMessage() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int choice = random.nextInt(weights[0] + weights[1] + weights[2]);
+		if (choice < weights[0]) {
+			return "expression=" + EXPRESSIONS[random.nextInt(EXPRESSIONS.length)] + "%" + random.nextInt(101);
+		} else if (choice < weights[0] + weights[1]) {
+			return "gazex=" + (random.nextInt(601) - 300) + ",gazey=" + (random.nextInt(601) - 300);
+		} else {
+			return "talking=" + random.nextBoolean();
+		}
+	}
+
+	private void printSummary(PrintStream out, long elapsed) {
+		double seconds = elapsed / 1e9;
+		out.printf("Sent %d messages in %.3f s (%.0f messages/s), %.0f answers/s%n", sent.get(), seconds,
+				sent.get() / seconds, (ok.get() + errors.get() + dropped.get()) / seconds);
+		out.printf("%d OK, %d ERROR, %d dropped (out of order), %d timed out, %d failed%n", ok.get(), errors.get(),
+				dropped.get(), timeouts.get(), failed.get());
+		out.printf("Round trip time in ms: min %.3f, mean %.3f, p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+				rtt.getMin() / 1e6, rtt.getMean() / 1e6, rtt.getValueAtPercentile(50) / 1e6,
+				rtt.getValueAtPercentile(99) / 1e6, rtt.getValueAtPercentile(99.9) / 1e6, rtt.getMax() / 1e6);
+	}
+
+	private static int indexOf(String[] array, String value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i].equals(value)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MessageLog that keeps the most recent lines in a ring buffer of fixed capacity, so a long session doesn't use more
+ * and more memory. The oldest line is overwritten when the buffer is full. Lines can be added from any thread and are
+ * read in batches with copyTo(), e.g. by the LogListModel of the MainWindow.
+ */
+public class LogBuffer implements MessageLog {
+
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * A single line of the log
+	 */
+	public static class Entry {
+
+		private final long timestamp;
+		private final Direction direction;
+		private final String message;
+
+		Entry(long timestamp, Direction direction, String message) {
+			this.timestamp = timestamp;
+			this.direction = direction;
+			this.message = message;
+		}
+
+		/**
+		 * @return the time the line was printed, in milliseconds since 1970
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public Direction getDirection() {
+			return direction;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		@Override
+		public String toString() {
+			return message;
+		}
+	}
+
+	private final Entry[] entries;
+	// number of lines ever added, the next line is written to entries[total % length]
+	private long total;
+
+	/**
+	 * @param capacity maximum number of lines that are kept
+	 */
+	public LogBuffer(int capacity) {
+		entries = new Entry[capacity];
+	}
+
+	@Override
+	public void print(String message) {
+		print(Direction.INFO, message);
+	}
+
+	@Override
+	public void print(Direction direction, String message) {
+		Entry entry = new Entry(System.currentTimeMillis(), direction, message);
+		synchronized (this) {
+			entries[(int) (total % entries.length)] = entry;
+			total++;
+		}
+	}
+
+	/**
+	 * @return number of lines ever added, including overwritten ones. It changes with every added line.
+	 */
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return number of lines in the buffer
+	 */
+	public synchronized int size() {
+		return (int) Math.min(total, entries.length);
+	}
+
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	/**
+	 * Removes all lines
+	 */
+	public synchronized void clear() {
+		Arrays.fill(entries, null);
+		total = 0;
+	}
+
+	/**
+	 * Copies the lines in the buffer, oldest first
+	 * @param target receives the lines, it is cleared first
+	 * @return the total the copy was taken at, see getTotal()
+	 */
+	public synchronized long copyTo(List<Entry> target) {
+		target.clear();
+		int size = size();
+		for (long i = total - size; i < total; i++) {
+			target.add(entries[(int) (i % entries.length)]);
+		}
+		return total;
+	}
+
+}
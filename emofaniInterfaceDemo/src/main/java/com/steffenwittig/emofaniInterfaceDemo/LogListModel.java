@@ -0,0 +1,116 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.Timer;
+
+/**
+ * Shows the lines of a LogBuffer in a JList. The model doesn't listen to every added line; a Swing timer copies the
+ * buffer a few times per second if it has changed, so a fast stream of messages causes one repaint per refresh instead
+ * of one per message. Lines can be filtered by their direction and by a text they have to contain, e.g. the name of a
+ * parameter.
+ */
+public class LogListModel extends AbstractListModel<LogBuffer.Entry> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** milliseconds between two refreshes */
+	public static final int REFRESH_INTERVAL = 100;
+
+	private final LogBuffer buffer;
+	private final Timer timer;
+
+	private final List<LogBuffer.Entry> copy = new ArrayList<LogBuffer.Entry>();
+	private List<LogBuffer.Entry> visible = new ArrayList<LogBuffer.Entry>();
+	private long copiedTotal = -1;
+
+	private MessageLog.Direction direction;
+	private String filter = "";
+
+	/**
+	 * Creates the model, call start() to show the lines of the buffer
+	 * @param buffer contains the lines
+	 */
+	public LogListModel(LogBuffer buffer) {
+		this.buffer = buffer;
+		this.timer = new Timer(REFRESH_INTERVAL, event -> refresh());
+	}
+
+	/**
+	 * Starts refreshing the model
+	 */
+	public void start() {
+		refresh();
+		timer.start();
+	}
+
+	/**
+	 * Stops refreshing the model
+	 */
+	public void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Only shows lines of one direction
+	 * @param direction the direction or null for all lines
+	 */
+	public void setDirection(MessageLog.Direction direction) {
+		this.direction = direction;
+		copiedTotal = -1;
+		refresh();
+	}
+
+	/**
+	 * Only shows lines that contain a text
+	 * @param filter the text, e.g. "gazex", or an empty string for all lines. The case is ignored.
+	 */
+	public void setFilter(String filter) {
+		this.filter = filter.trim().toLowerCase();
+		copiedTotal = -1;
+		refresh();
+	}
+
+	@Override
+	public int getSize() {
+		return visible.size();
+	}
+
+	@Override
+	public LogBuffer.Entry getElementAt(int index) {
+		return visible.get(index);
+	}
+
+	/**
+	 * Copies the buffer and filters its lines if lines have been added or the filter has changed. Has to be called
+	 * on the event dispatch thread.
+	 */
+	void refresh() {
+		if (buffer.getTotal() == copiedTotal) {
+			return;
+		}
+		copiedTotal = buffer.copyTo(copy);
+
+		List<LogBuffer.Entry> filtered = new ArrayList<LogBuffer.Entry>(copy.size());
+		for (LogBuffer.Entry entry : copy) {
+			if ((direction == null || entry.getDirection() == direction)
+					&& (filter.isEmpty() || entry.getMessage().toLowerCase().contains(filter))) {
+				filtered.add(entry);
+			}
+		}
+
+		int oldSize = visible.size();
+		visible = filtered;
+		if (oldSize > filtered.size()) {
+			fireIntervalRemoved(this, filtered.size(), oldSize - 1);
+		} else if (oldSize < filtered.size()) {
+			fireIntervalAdded(this, oldSize, filtered.size() - 1);
+		}
+		if (Math.min(oldSize, filtered.size()) > 0) {
+			fireContentsChanged(this, 0, Math.min(oldSize, filtered.size()) - 1);
+		}
+	}
+
+}
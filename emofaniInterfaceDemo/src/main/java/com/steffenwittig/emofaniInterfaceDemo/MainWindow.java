@@ -1,5 +1,7 @@
 package com.steffenwittig.emofaniInterfaceDemo;
 
+import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Cursor;
 import java.awt.Dimension;
@@ -8,28 +10,48 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.Hashtable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
 /**
  * Singleton that contains the main control elements to send messages to Emofani
  * 
  * @author Steffen Wittig
  */
-public class MainWindow extends JFrame {
+public class MainWindow extends JFrame implements FaceStatusListener {
 
 	private static final long serialVersionUID = 1;
 	private static MainWindow instance;
 
-	private static JTextArea textarea;
+	private static final LogBuffer log = new LogBuffer(LogBuffer.DEFAULT_CAPACITY);
+	private LogListModel logModel;
 	private static JTextField hostField, sendPortField, receivePortField,
-			timeoutField, talkField;
+			timeoutField, streamRateField, talkField;
+	private static JComboBox<TransportType> transportBox;
+	private static JComboBox<TargetGroup.Mode> groupBox;
+	private static JCheckBox binaryBox;
 
 	private JSlider arousalSlider, pleasureSlider, blushSlider, gazeXSlider, gazeYSlider,
 			gazeZSlider, expressionInstensitySlider;
 	private JToggleButton talkingButton, idleButton;
 
+	private final ParameterStreamer streamer = new ParameterStreamer(
+			Communicator.getInstance());
+
+	// true while the sliders are set to the values of a status message, so
+	// they don't send these values back
+	private boolean updating;
+
 	/**
 	 * creates MainWindow. Puts Controls- and Communicator Panel in a two-column
 	 * grid layout.
@@ -50,6 +72,7 @@ public class MainWindow extends JFrame {
 			@Override
 			public void windowClosing(java.awt.event.WindowEvent windowEvent) {
 				System.out.println("TryFace exit");
+				Communicator.getInstance().close();
 				System.exit(0);
 			}
 		});
@@ -62,14 +85,17 @@ public class MainWindow extends JFrame {
 		cpane.add(this.getControlsPanel());
 		cpane.add(this.getCommunicatorPanel());
 
+		Communicator.getInstance().addStatusListener(this);
+
 		this.setVisible(true);
 	}
 
 	/**
-	 * Calls getInstance but does not return the instance
+	 * Calls getInstance but does not return the instance. Starts loading the sound files of the scenarios.
 	 */
 	public static void create() {
 		MainWindow.getInstance();
+		ScenarioWindow.preload();
 	}
 
 	/**
@@ -85,15 +111,23 @@ public class MainWindow extends JFrame {
 	}
 
 	/**
-	 * Appends a new line to the UDP log textarea
+	 * Appends a new line to the UDP log. Can be called on any thread, the
+	 * log list shows it with its next refresh.
 	 * 
 	 * @param message
 	 *            The content of the new line
 	 */
 	public void print(String message) {
-		if (textarea != null) {
-			textarea.append(message + "\n");
-		}
+		log.print(message);
+	}
+
+	/**
+	 * Returns the UDP log, which keeps the most recent lines
+	 * 
+	 * @return the log
+	 */
+	public static LogBuffer getLog() {
+		return log;
 	}
 
 	/**
@@ -105,59 +139,89 @@ public class MainWindow extends JFrame {
 		return expressionInstensitySlider.getValue();
 	}
 
+	/**
+	 * Shows a value of a status message on a slider, unless the user is
+	 * dragging it
+	 */
+	private static void show(JSlider slider, int value) {
+		if (!slider.getValueIsAdjusting()) {
+			slider.setValue(value);
+		}
+	}
+
 	public String getTalkMessage() {
 		return talkField.getText();
 	}
 
 	/**
-	 * Interprets a response string received from the Communicator class and
-	 * updates the values of all sliders as well as the talking and idle
-	 * switches with the contained values
+	 * Updates the values of all sliders as well as the talking and idle
+	 * switches with the values of a status message received by the
+	 * Communicator class. Parameters missing in the message are left unchanged,
+	 * and so is the slider the user is dragging, because the status may be
+	 * older than the value under the mouse. Must be called on the event
+	 * dispatch thread.
 	 * 
-	 * @param data
-	 *            response string received via UDP
+	 * @param status
+	 *            status received via UDP
 	 */
-	public void update(String data) {
+	public void update(FaceStatus status) {
 
-		Hashtable<String, String> keyValues = new Hashtable<String, String>();
+		if (!status.isOk()) {
+			print("Emofani reported an error: " + status.getError());
+			return;
+		}
 
-		// try to interpret the message and put the parameters into an array
+		int fields = status.getFields();
+		updating = true;
 		try {
-
-			String[] params = data.split(";");
-			for (String param : params) {
-				String[] keyValue = param.split(":");
-				keyValues.put(keyValue[0], keyValue[1]);
+			if ((fields & FaceState.AROUSAL) != 0) {
+				show(arousalSlider, status.getArousal());
 			}
-
-		} catch (Exception e) {
-			print("Error while interpreting a received message.");
+			if ((fields & FaceState.PLEASURE) != 0) {
+				show(pleasureSlider, status.getPleasure());
+			}
+			if ((fields & FaceState.BLUSH) != 0) {
+				show(blushSlider, status.getBlush());
+			}
+			if ((fields & FaceState.GAZE_X) != 0) {
+				show(gazeXSlider, status.getGazeX());
+			}
+			if ((fields & FaceState.GAZE_Y) != 0) {
+				show(gazeYSlider, status.getGazeY());
+			}
+			if ((fields & FaceState.GAZE_Z) != 0) {
+				show(gazeZSlider, status.getGazeZ());
+			}
+			if ((fields & FaceState.TALKING) != 0) {
+				talkingButton.setSelected(status.isTalking());
+			}
+			if ((fields & FaceState.IDLE) != 0) {
+				idleButton.setSelected(status.isIdle());
+			}
+		} finally {
+			updating = false;
 		}
 
-		// try to set the contained values to the parameters
-		try {
-
-			arousalSlider.setValue(Integer.parseInt(keyValues.get("arousal")));
-			pleasureSlider
-					.setValue(Integer.parseInt(keyValues.get("pleasure")));
-			gazeXSlider.setValue(Integer.parseInt(keyValues.get("gazex")));
-			gazeYSlider.setValue(Integer.parseInt(keyValues.get("gazey")));
-			gazeZSlider.setValue(Integer.parseInt(keyValues.get("gazez")));
-			System.out.println("Incoming:-" + keyValues.get("talking") + "-");
-			talkingButton.setSelected(keyValues.get("talking")
-					.equalsIgnoreCase("true"));
-			idleButton.setSelected(keyValues.get("idle").equalsIgnoreCase(
-					"true"));
-
-		} catch (Exception e) {
+		int missing = status.getMissingFields(FaceState.OK_FIELDS);
+		if (missing != 0) {
 			print("Received message was missing at least one parameter: "
-					+ e.getMessage());
+					+ FaceState.describe(missing));
 		}
 	}
 
+	/**
+	 * Shows every status received by the Communicator, called on the event
+	 * dispatch thread
+	 */
+	@Override
+	public void statusReceived(FaceStatus status) {
+		update(status);
+	}
+
 	/**
 	 * returns the content of the host field. This field contains the address or
-	 * name of the host where Emofani is running
+	 * name of the host where Emofani is running, or a comma separated list of
+	 * hosts (optionally with :port) to control several faces at once
 	 * 
 	 * @return string with host's name or address
 	 */
@@ -165,10 +229,40 @@ public class MainWindow extends JFrame {
 		return hostField.getText();
 	}
 
+	/**
+	 * returns the selection of the group box. It determines how many hosts
+	 * have to answer OK if the host field contains several hosts
+	 * 
+	 * @return the selected mode
+	 */
+	public TargetGroup.Mode getGroupMode() {
+		return (TargetGroup.Mode) groupBox.getSelectedItem();
+	}
+
+	/**
+	 * returns the selection of the transport box. It determines whether
+	 * messages are sent as UDP datagrams or over a TCP connection
+	 * 
+	 * @return the selected transport
+	 */
+	public TransportType getTransport() {
+		return (TransportType) transportBox.getSelectedItem();
+	}
+
+	/**
+	 * returns whether the binary box is checked. If it is, messages are sent
+	 * in the compact binary format if Emofani accepts it
+	 * 
+	 * @return true for the binary format
+	 */
+	public boolean isBinary() {
+		return binaryBox.isSelected();
+	}
+
 	/**
 	 * returns content of the timeout field. This field is used by the
-	 * Communicator class to determine how long it should lock up (it's not
-	 * multi threaded, yet) before it stops listening
+	 * Communicator class to determine how long it should wait for a status
+	 * message before a message counts as unanswered
 	 * 
 	 * @return integer for timeout in milliseconds
 	 */
@@ -181,6 +275,21 @@ public class MainWindow extends JFrame {
 		}
 	}
 
+	/**
+	 * returns the content of the stream rate field. This field contains the
+	 * number of messages per second that will be sent while a parameter slider
+	 * is moved. 0 means that a value is only sent when the slider is released.
+	 * 
+	 * @return integer for messages per second
+	 */
+	public int getStreamRate() {
+		try {
+			return Integer.parseInt(streamRateField.getText());
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+
 	/**
 	 * returns the content of the output port field. This field contains the
 	 * port number of the host where Emofani is running
@@ -251,7 +360,8 @@ public class MainWindow extends JFrame {
 
 	/**
 	 * Creates the scenario panel which contains the "Open Scenario Window"
-	 * button
+	 * button, the button that records the session to a file in the working
+	 * directory and the button that forgets the mirrored state of the faces
 	 * 
 	 * @return the panel
 	 */
@@ -294,12 +404,34 @@ public class MainWindow extends JFrame {
 
 		panel.add(button);
 
+		JToggleButton recordButton = new JToggleButton("Record Session");
+		recordButton.addActionListener(e -> {
+			Communicator communicator = Communicator.getInstance();
+			if (!recordButton.isSelected()) {
+				communicator.stopRecording();
+				return;
+			}
+			String name = "session-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".emofani";
+			try {
+				communicator.startRecording(Paths.get(name));
+			} catch (IOException ex) {
+				print("Error: Can't record to " + name + ": " + ex.getMessage());
+				recordButton.setSelected(false);
+			}
+		});
+		panel.add(recordButton);
+
+		JButton resyncButton = new JButton("Resync");
+		resyncButton.setToolTipText("Send every parameter again, e.g. after emofani was restarted");
+		resyncButton.addActionListener(e -> Communicator.getInstance().resync());
+		panel.add(resyncButton);
+
 		return panel;
 	}
 
 	/**
-	 * Creates target panel, which contains input fields for host, output and
-	 * input port, and timeout
+	 * Creates target panel, which contains input fields for host, group mode,
+	 * transport, format, output and input port, and timeout
 	 * 
 	 * @return the panel
 	 */
@@ -316,6 +448,34 @@ public class MainWindow extends JFrame {
 		hostField.setBorder(BorderFactory.createTitledBorder("Host"));
 		panel.add(hostField);
 
+		/*
+		 * Group box, only used if the host field contains several hosts
+		 */
+		groupBox = new JComboBox<TargetGroup.Mode>(TargetGroup.Mode.values());
+		groupBox.setBorder(BorderFactory.createTitledBorder("Group"));
+		panel.add(groupBox);
+
+		/*
+		 * Transport box, TCP answers on the connection and ignores the input
+		 * port
+		 */
+		transportBox = new JComboBox<TransportType>(TransportType.values());
+		transportBox.setBorder(BorderFactory.createTitledBorder("Transport"));
+		transportBox.addActionListener(e -> receivePortField
+				.setEnabled(getTransport() == TransportType.UDP));
+		transportBox.addActionListener(e -> settingsChanged());
+		groupBox.addActionListener(e -> settingsChanged());
+		panel.add(transportBox);
+
+		/*
+		 * Binary box
+		 */
+		binaryBox = new JCheckBox("Binary");
+		binaryBox.setBorder(BorderFactory.createTitledBorder("Format"));
+		binaryBox.setBorderPainted(true);
+		binaryBox.addActionListener(e -> settingsChanged());
+		panel.add(binaryBox);
+
 		/*
 		 * SendPort field
 		 */
@@ -339,22 +499,161 @@ public class MainWindow extends JFrame {
 		timeoutField.setBorder(BorderFactory.createTitledBorder("Timeout"));
 		panel.add(timeoutField);
 
+		/*
+		 * Stream rate field
+		 */
+		streamRateField = new JTextField("60", 3);
+		streamRateField.setBorder(BorderFactory.createTitledBorder("Stream Hz"));
+		streamRateField.getDocument().addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				streamer.setRate(getStreamRate());
+			}
+
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				streamer.setRate(getStreamRate());
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				// no event
+			}
+		});
+		streamer.setRate(getStreamRate());
+		panel.add(streamRateField);
+
+		for (JTextField field : new JTextField[] { hostField, sendPortField, receivePortField, timeoutField }) {
+			field.getDocument().addDocumentListener(new DocumentListener() {
+
+				@Override
+				public void removeUpdate(DocumentEvent e) {
+					settingsChanged();
+				}
+
+				@Override
+				public void insertUpdate(DocumentEvent e) {
+					settingsChanged();
+				}
+
+				@Override
+				public void changedUpdate(DocumentEvent e) {
+					// no event
+				}
+			});
+		}
+		settingsChanged();
+
 		return panel;
 	}
 
 	/**
-	 * Creates UDP log panel which contains a non editable textarea
+	 * Hands the content of the target fields to the Communicator, called on
+	 * the event dispatch thread whenever one of them changes. Invalid numbers
+	 * are passed on as -1 (ports) or 0 (timeout), like the getters return
+	 * them, but aren't printed while they are typed.
+	 */
+	private void settingsChanged() {
+		Communicator.getInstance().setSettings(new Communicator.Settings(getHost(),
+				parse(sendPortField, -1), parse(receivePortField, -1), getTransport(),
+				isBinary(), getGroupMode(), parse(timeoutField, 0)));
+	}
+
+	private static int parse(JTextField field, int invalid) {
+		try {
+			return Integer.parseInt(field.getText());
+		} catch (NumberFormatException e) {
+			return invalid;
+		}
+	}
+
+	/**
+	 * Creates UDP log panel which contains a list of the most recent log lines
+	 * and controls to filter them by direction or parameter
 	 * 
 	 * @return the panel
 	 */
-	private JScrollPane getUdpLogPanel() {
+	private JPanel getUdpLogPanel() {
+
+		logModel = new LogListModel(log);
+		final JList<LogBuffer.Entry> list = new JList<LogBuffer.Entry>(logModel);
+		list.setCellRenderer(new DefaultListCellRenderer() {
+			private static final long serialVersionUID = 1L;
+			private final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+
+			@Override
+			public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+					boolean isSelected, boolean cellHasFocus) {
+				LogBuffer.Entry entry = (LogBuffer.Entry) value;
+				return super.getListCellRendererComponent(list,
+						format.format(new Date(entry.getTimestamp())) + "  " + entry.getMessage(), index,
+						isSelected, cellHasFocus);
+			}
+		});
+		// all lines have the same height, so the list doesn't have to measure them
+		list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight() + 2);
+		final JScrollPane scrollPane = new JScrollPane(list);
+
+		// keep the newest line visible unless the user has scrolled up
+		logModel.addListDataListener(new ListDataListener() {
+
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				JScrollBar bar = scrollPane.getVerticalScrollBar();
+				if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight()) {
+					SwingUtilities.invokeLater(() -> list.ensureIndexIsVisible(logModel.getSize() - 1));
+				}
+			}
+
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				// nothing to scroll
+			}
+
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				intervalAdded(e);
+			}
+		});
+
+		final JComboBox<String> directionBox = new JComboBox<String>(new String[] { "All", "Out", "In", "Info" });
+		directionBox.addActionListener(e -> {
+			int index = directionBox.getSelectedIndex();
+			logModel.setDirection((index == 0) ? null : MessageLog.Direction.values()[index - 1]);
+		});
 
-		textarea = new JTextArea();
-		textarea.setEditable(false);
+		final JTextField filterField = new JTextField(10);
+		filterField.setToolTipText("Only show lines containing this text, e.g. a parameter");
+		filterField.getDocument().addDocumentListener(new DocumentListener() {
 
-		JScrollPane panel = new JScrollPane(textarea);
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				logModel.setFilter(filterField.getText());
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				logModel.setFilter(filterField.getText());
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				logModel.setFilter(filterField.getText());
+			}
+		});
+
+		JPanel filterPanel = new JPanel();
+		filterPanel.setLayout(new BoxLayout(filterPanel, BoxLayout.X_AXIS));
+		filterPanel.add(directionBox);
+		filterPanel.add(filterField);
+
+		JPanel panel = new JPanel(new BorderLayout());
 		panel.setBorder(BorderFactory.createTitledBorder("UDP Log"));
+		panel.add(filterPanel, BorderLayout.NORTH);
+		panel.add(scrollPane, BorderLayout.CENTER);
 
+		logModel.start();
 		return panel;
 	}
 
@@ -482,7 +781,9 @@ public class MainWindow extends JFrame {
 	/**
 	 * Add a parameter slider to a panel. Changing it will send a message where
 	 * the name of the slider will be used as the parameter-key and its value as
-	 * the parameter-value. MouseListener attached.
+	 * the parameter-value. If streaming is enabled, every change is streamed
+	 * while the slider is moved (ChangeListener attached). Otherwise the value is
+	 * sent when the slider is released (MouseListener attached).
 	 * 
 	 * @param name
 	 *            title of the slider
@@ -499,13 +800,29 @@ public class MainWindow extends JFrame {
 
 		JSlider slider = addNiceSlider(name, min, max, targetPanel);
 
+		slider.addChangeListener(new ChangeListener() {
+
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				if (streamer.isStreaming() && !updating) {
+					JSlider source = (JSlider) e.getSource();
+					streamer.offer(source.getName(),
+							String.valueOf(source.getValue()));
+				}
+			}
+		});
+
 		slider.addMouseListener(new MouseListener() {
 
 			@Override
 			public void mouseReleased(MouseEvent e) {
+				if (streamer.isStreaming()) {
+					// the last value has already been streamed
+					return;
+				}
 				JSlider source = (JSlider) e.getSource();
 				String value = String.valueOf(source.getValue());
-				Communicator.getInstance().send(source.getName(), value);
+				Communicator.getInstance().post(source.getName(), value);
 			}
 
 			@Override
@@ -555,7 +872,7 @@ public class MainWindow extends JFrame {
 			public void mouseReleased(MouseEvent e) {
 				JButton button = (JButton) e.getSource();
 				MainWindow mw = MainWindow.getInstance();
-				Communicator.getInstance().send("expression",
+				Communicator.getInstance().post("expression",
 						button.getText() + "%" + mw.getExpressionInstensity());
 
 			}
@@ -607,7 +924,7 @@ public class MainWindow extends JFrame {
 			public void mouseReleased(MouseEvent e) {
 				JToggleButton button = (JToggleButton) e.getSource();
 				System.out.println(button.isSelected());
-				Communicator.getInstance().send(button.getText(),
+				Communicator.getInstance().post(button.getText(),
 						String.valueOf(button.isSelected()));
 			}
 
@@ -664,7 +981,7 @@ public class MainWindow extends JFrame {
 				// message = message.replaceAll("�", "oe");
 
 				System.out.println("Say " + message);
-				Communicator.getInstance().send("say", message);
+				Communicator.getInstance().post("say", message);
 			}
 
 			@Override
@@ -0,0 +1,152 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes messages in Emofani's format directly into a reused ByteBuffer:
+ *
+ * t:[timestamp];s:[source];p:[port];d:[key]=[value][,[key]=[value]...]
+ *
+ * The "s:[source];p:[port];d:" part is encoded once and only rebuilt when source or port change. Strings are copied
+ * char by char and numbers are written digit by digit, so encoding a message doesn't allocate any objects. Text that
+ * isn't ASCII and messages longer than CAPACITY are rejected with an IOException instead of being sent garbled.
+ *
+ * Only the encoding is free of allocations. EmofaniClient.sendData() still creates about 100 bytes of objects per
+ * message: the CompletableFuture it returns and the entry in its map of pending messages. With a log, a timeout,
+ * metrics or retries it also creates the log line, the timeout task and the callbacks that complete them.
+ *
+ * Usage: encoder.begin(id).append("gazex", 130).append("gazey", -80).finish()
+ *
+ * An encoder is not thread safe, every sending thread needs its own.
+ */
+public class MessageEncoder {
+
+	/** Largest message that can be encoded */
+	public static final int CAPACITY = 4096;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(CAPACITY);
+	private byte[] header = new byte[0];
+	private String source;
+	private int port = -1;
+	private boolean firstPair, finished;
+
+	/**
+	 * Sets the address and port Emofani should send status messages to. The header is only rebuilt if one of them
+	 * changed.
+	 * @param source IP address of this machine as seen by Emofani
+	 * @param port port where Emofani should send status messages to
+	 */
+	public void setHeader(String source, int port) {
+		if (port == this.port && source.equals(this.source)) {
+			return;
+		}
+		String text = "s:" + source + ";p:" + port + ";d:";
+		byte[] bytes = new byte[text.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) text.charAt(i);
+		}
+		this.header = bytes;
+		this.source = source;
+		this.port = port;
+	}
+
+	/**
+	 * Starts a new message. The previous message in the buffer is discarded.
+	 * @param id the id (t) of the message
+	 * @return this encoder
+	 * @throws IOException if the header is longer than CAPACITY
+	 */
+	public MessageEncoder begin(long id) throws IOException {
+		buffer.clear();
+		buffer.put((byte) 't').put((byte) ':');
+		Ascii.putNumber(buffer, id);
+		Ascii.ensureRemaining(buffer, header.length + 1);
+		buffer.put((byte) ';');
+		buffer.put(header);
+		firstPair = true;
+		finished = false;
+		return this;
+	}
+
+	/**
+	 * Appends a key=value pair to the data part of the message
+	 * @param param The name of the parameter, e.g. "expression"
+	 * @param value The value of the parameter, e.g. "happy%50"
+	 * @return this encoder
+	 * @throws CharConversionException if the text isn't ASCII
+	 * @throws IOException if the message gets longer than CAPACITY
+	 */
+	public MessageEncoder append(CharSequence param, CharSequence value) throws IOException {
+		putKey(param);
+		Ascii.putChars(buffer, value);
+		return this;
+	}
+
+	/**
+	 * Appends a key=value pair with a numeric value to the data part of the message
+	 * @param param The name of the parameter, e.g. "gazex"
+	 * @param value The value of the parameter
+	 * @return this encoder
+	 * @throws CharConversionException if the name isn't ASCII
+	 * @throws IOException if the message gets longer than CAPACITY
+	 */
+	public MessageEncoder append(CharSequence param, long value) throws IOException {
+		putKey(param);
+		Ascii.putNumber(buffer, value);
+		return this;
+	}
+
+	/**
+	 * Appends data that already consists of one or more comma separated key=value pairs
+	 * @param data e.g. "gazex=130,gazey=-80"
+	 * @return this encoder
+	 * @throws CharConversionException if the data isn't ASCII
+	 * @throws IOException if the message gets longer than CAPACITY
+	 */
+	public MessageEncoder appendData(CharSequence data) throws IOException {
+		if (!firstPair) {
+			Ascii.ensureRemaining(buffer, 1);
+			buffer.put((byte) ',');
+		}
+		Ascii.putChars(buffer, data);
+		firstPair = false;
+		return this;
+	}
+
+	/**
+	 * Finishes the message and prepares the buffer for writing it to a channel.
+	 * @return the buffer containing the message, positioned at its start
+	 */
+	public ByteBuffer finish() {
+		buffer.flip();
+		finished = true;
+		return buffer;
+	}
+
+	/**
+	 * @return the message currently in the buffer, e.g. for logging. This allocates a new String.
+	 */
+	@Override
+	public String toString() {
+		int end = finished ? buffer.limit() : buffer.position();
+		StringBuilder message = new StringBuilder(end);
+		for (int i = 0; i < end; i++) {
+			message.append((char) buffer.get(i));
+		}
+		return message.toString();
+	}
+
+	private void putKey(CharSequence param) throws IOException {
+		if (!firstPair) {
+			Ascii.ensureRemaining(buffer, 1);
+			buffer.put((byte) ',');
+		}
+		Ascii.putChars(buffer, param);
+		Ascii.ensureRemaining(buffer, 1);
+		buffer.put((byte) '=');
+		firstPair = false;
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+/**
+ * Receives the log lines of an EmofaniClient, e.g. the UDP log of the MainWindow or the console of the command line
+ * client.
+ */
+public interface MessageLog {
+
+	/**
+	 * Kind of a log line
+	 */
+	enum Direction {
+		/** a message sent to Emofani */
+		OUT,
+		/** a message received from Emofani */
+		IN,
+		/** errors, timeouts and other notes */
+		INFO
+	}
+
+	/**
+	 * Prints a single line
+	 * @param message The content of the line
+	 */
+	void print(String message);
+
+	/**
+	 * Prints a single line about a sent or received message. Logs that don't tell directions apart print the line
+	 * like any other.
+	 * @param direction whether the line is about a sent or received message
+	 * @param message The content of the line
+	 */
+	default void print(Direction direction, String message) {
+		print(message);
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams continuously changing parameters (e.g. while a slider is dragged) at a fixed rate. Every parameter has one
+ * slot that only holds its newest value. A dedicated thread flushes all filled slots as one batch per tick into the
+ * outbound queue of the Communicator, so offering a value never blocks and older values are never sent.
+ */
+public class ParameterStreamer {
+
+	public static final int MIN_RATE = 1, MAX_RATE = 1000;
+
+	private final Communicator communicator;
+	private final ConcurrentHashMap<String, String> slots = new ConcurrentHashMap<String, String>();
+	private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "emofani-streamer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private ScheduledFuture<?> flushTask;
+	private int rate;
+
+	/**
+	 * Creates a streamer that sends via the given Communicator. Call setRate() to start streaming.
+	 * @param communicator used to send the batches
+	 */
+	public ParameterStreamer(Communicator communicator) {
+		this.communicator = communicator;
+	}
+
+	/**
+	 * Puts the newest value of a parameter into its slot. It replaces a value that hasn't been sent yet.
+	 * @param param The name of the parameter, e.g. "gazex"
+	 * @param value The value of the parameter
+	 */
+	public void offer(String param, String value) {
+		slots.put(param, value);
+	}
+
+	/**
+	 * Changes the rate at which the slots are flushed. A rate of 0 stops streaming; values that are offered while
+	 * streaming is stopped will be sent once it is started again.
+	 * @param rate flushes per second, between MIN_RATE and MAX_RATE or 0
+	 */
+	public synchronized void setRate(int rate) {
+		if (rate != 0) {
+			rate = Math.max(MIN_RATE, Math.min(MAX_RATE, rate));
+		}
+		if (rate == this.rate) {
+			return;
+		}
+		this.rate = rate;
+		if (flushTask != null) {
+			flushTask.cancel(false);
+			flushTask = null;
+		}
+		if (rate > 0) {
+			long period = TimeUnit.SECONDS.toNanos(1) / rate;
+			flushTask = sender.scheduleAtFixedRate(this::flush, 0, period, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * @return flushes per second, 0 if streaming is stopped
+	 */
+	public synchronized int getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return true if the streamer is currently flushing its slots
+	 */
+	public boolean isStreaming() {
+		return getRate() > 0;
+	}
+
+	/**
+	 * Empties all slots into a single batch and posts it to the outbound queue of the Communicator.
+	 */
+	private void flush() {
+		// an exception would cancel all further flushes
+		try {
+			StringBuilder data = new StringBuilder();
+			for (String param : slots.keySet()) {
+				String value = slots.remove(param);
+				if (value != null) {
+					data.append(data.length() == 0 ? "" : ",").append(param).append('=').append(value);
+				}
+			}
+			if (data.length() > 0) {
+				communicator.postData(data.toString());
+			}
+		} catch (RuntimeException e) {
+			MainWindow.getLog().print("Error: streaming failed: " + e);
+		}
+	}
+
+}
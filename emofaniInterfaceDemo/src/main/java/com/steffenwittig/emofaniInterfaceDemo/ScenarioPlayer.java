@@ -0,0 +1,164 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a Timeline. Every step is scheduled at the start time of the scenario plus its offset, measured with
+ * System.nanoTime(), so a slow answer of Emofani or a long step doesn't delay the following steps. Messages are sent
+ * without waiting for the answer.
+ *
+ * Talking is set to true when a clip starts and to false when it stops. Only one scenario runs at a time: playing a
+ * scenario cancels the running one, which stops its clip.
+ */
+public class ScenarioPlayer {
+
+	/**
+	 * Carries out the steps of a scenario. The methods are called on the scenario thread and must not block.
+	 */
+	public interface Output {
+
+		/**
+		 * Sends a message without waiting for the answer
+		 * @param data one or more comma separated key=value pairs
+		 */
+		void send(String data);
+
+		/**
+		 * Starts playing a sound file without waiting for it to end
+		 * @param resource name of the resource, e.g. "/message_hello.wav"
+		 * @param stopped to be called once when the clip has stopped, at its end or because of stop()
+		 */
+		void play(String resource, Runnable stopped);
+
+		/**
+		 * Stops the sound file that is playing, if any
+		 */
+		void stop();
+	}
+
+	private final Output output;
+	private final ScheduledExecutorService scheduler;
+
+	// the running scenario, its scheduled steps and a number that tells steps of cancelled scenarios apart
+	private Timeline current;
+	private final List<ScheduledFuture<?>> scheduled = new ArrayList<ScheduledFuture<?>>();
+	private long generation;
+
+	/**
+	 * @param output carries out the steps
+	 */
+	public ScenarioPlayer(Output output) {
+		this(output, ThreadMode.PLATFORM);
+	}
+
+	/**
+	 * @param output carries out the steps
+	 * @param threadMode the kind of the scenario thread
+	 */
+	public ScenarioPlayer(Output output, ThreadMode threadMode) {
+		this.output = output;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threadMode.newThreadFactory("emofani-scenario"));
+	}
+
+	/**
+	 * Starts a scenario. A scenario that is still running is cancelled first.
+	 * @param timeline the steps of the scenario
+	 */
+	public synchronized void play(Timeline timeline) {
+		cancel();
+		final long run = ++generation;
+		final long start = System.nanoTime();
+		current = timeline;
+
+		// actions with the same offset run in one task, in the order of the steps
+		TreeMap<Long, List<Runnable>> actions = new TreeMap<Long, List<Runnable>>();
+		for (final Timeline.Step step : timeline.getSteps()) {
+			switch (step.getCommand()) {
+			case SEND:
+				add(actions, step.getOffset(), () -> output.send(step.getArgument()));
+				break;
+			case PLAY:
+				// talking ends with the clip, even if it is stopped early
+				add(actions, step.getOffset(), () -> {
+					output.send("talking=true");
+					output.play(step.getArgument(), () -> output.send("talking=false"));
+				});
+				break;
+			case WAIT:
+				break;
+			}
+		}
+		add(actions, timeline.getLength(), () -> {
+			current = null;
+			scheduled.clear();
+		});
+
+		for (Map.Entry<Long, List<Runnable>> entry : actions.entrySet()) {
+			schedule(run, start, entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Cancels the running scenario. Its remaining steps are skipped and a playing clip is stopped, which sets talking
+	 * to false.
+	 */
+	public synchronized void cancel() {
+		generation++;
+		for (ScheduledFuture<?> step : scheduled) {
+			step.cancel(false);
+		}
+		scheduled.clear();
+		if (current != null) {
+			current = null;
+			output.stop();
+		}
+	}
+
+	/**
+	 * @return true if a scenario is running
+	 */
+	public synchronized boolean isRunning() {
+		return current != null;
+	}
+
+	/**
+	 * @return the running scenario or null
+	 */
+	public synchronized Timeline getCurrent() {
+		return current;
+	}
+
+	private static void add(TreeMap<Long, List<Runnable>> actions, long offset, Runnable action) {
+		List<Runnable> list = actions.get(offset);
+		if (list == null) {
+			list = new ArrayList<Runnable>();
+			actions.put(offset, list);
+		}
+		list.add(action);
+	}
+
+	/**
+	 * Schedules actions at an offset from the start time. They are skipped if the scenario has been cancelled in the
+	 * meantime.
+	 */
+	private void schedule(final long run, long start, long offset, final List<Runnable> actions) {
+		long delay = start + TimeUnit.MILLISECONDS.toNanos(offset) - System.nanoTime();
+		scheduled.add(scheduler.schedule(() -> {
+			synchronized (this) {
+				if (run == generation) {
+					for (Runnable action : actions) {
+						action.run();
+					}
+				}
+			}
+		}, delay, TimeUnit.NANOSECONDS));
+	}
+
+}
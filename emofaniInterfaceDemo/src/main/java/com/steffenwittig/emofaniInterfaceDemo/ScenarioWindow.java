@@ -8,18 +8,33 @@ import java.awt.GridLayout;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.*;
 
 /**
  * Singleton that contains the scenario control elements to send messages to
- * Emofani. The buttons in this window will send a set of messages to ParamFace
- * and will cause the playback of sound files which will lock up the window
- * until the playback's finished
+ * Emofani. The buttons in this window start scenarios that send a set of
+ * messages to ParamFace and play sound files. The scenarios are read from the
+ * /scenarios folder and run by a ScenarioPlayer in the background, so the
+ * window doesn't lock up during playback. Sound files are decoded once, in the
+ * background at startup, and kept in a ClipCache; long ones are streamed. While
+ * a sound plays, LipSync moves the mouth of the face with it
  * 
  * @author Steffen Wittig
  */
@@ -27,7 +42,12 @@ public class ScenarioWindow extends JFrame {
 
 	private static final long serialVersionUID = 1L;
 	private static ScenarioWindow instance;
-	private Clip clip;
+	private static final Map<String, Timeline> scenarios = new HashMap<String, Timeline>();
+	private static final ClipCache clips = new ClipCache(ClipCache.DEFAULT_CAPACITY,
+			message -> MainWindow.getInstance().print(message));
+	private static final LipSync lipSync = new LipSync(data -> Communicator.getInstance().postData(data),
+			LipSync.DEFAULT_RATE, message -> MainWindow.getInstance().print(message));
+	private final ScenarioPlayer player = new ScenarioPlayer(new Output(), ThreadMode.getDefault());
 
 	/**
 	 * creates ScenarioWindow. Puts all the necessary buttons into a GridBag
@@ -67,6 +87,8 @@ public class ScenarioWindow extends JFrame {
 		c.weighty = 6;
 		cpane.add(buttonPanel, c);
 
+		preload();
+
 		this.setVisible(true);
 	}
 
@@ -83,109 +105,244 @@ public class ScenarioWindow extends JFrame {
 	}
 
 	/**
-	 * React to an action string passed to this method
+	 * React to an action string passed to this method by starting its scenario. A running scenario is interrupted.
 	 * 
 	 * @param action
 	 *            Action to be performed.
 	 */
 	private void performAction(String action) {
-
-		switch (action) {
-		case "Introduction":
-			performIntroduction();
-			break;
-		case "What are you looking for":
-			performQuestion();
-			break;
-		case "Did not understand":
-			performError();
-			break;
-		case "OK and follow":
-			performFollow();
-			break;
-		case "Look here":
-			performPoint();
-			break;
+		Timeline timeline;
+		synchronized (ScenarioWindow.class) {
+			timeline = scenarios.get(action);
+		}
+		if (timeline != null) {
+			player.play(timeline);
 		}
-
 	}
 
 	/**
-	 * ask what the user is looking for
+	 * Reads the scenarios of all actions from the /scenarios folder and starts loading their sound files in the
+	 * background, so they can be played right away. Does nothing if the scenarios have already been read.
 	 */
-	private void performQuestion() {
-		Communicator.getInstance().send("expression", "attentive%100");
-		playMessage("/message_whatareyoulookingfor.wav");
+	public static synchronized void preload() {
+		if (!scenarios.isEmpty()) {
+			return;
+		}
+		String[][] files = { { "Introduction", "introduction" }, { "What are you looking for", "question" },
+				{ "Did not understand", "error" }, { "OK and follow", "follow" }, { "Look here", "point" } };
+		Set<String> sounds = new LinkedHashSet<String>();
+		for (String[] file : files) {
+			try {
+				Timeline timeline = Timeline.load("/scenarios/" + file[1] + ".txt");
+				scenarios.put(file[0], timeline);
+				for (Timeline.Step step : timeline.getSteps()) {
+					if (step.getCommand() == Timeline.Step.Command.PLAY) {
+						sounds.add(step.getArgument());
+					}
+				}
+			} catch (IOException e) {
+				MainWindow.getInstance().print("Error: " + e.getMessage());
+			}
+		}
+		clips.preload(sounds);
+		lipSync.preload(sounds);
 	}
 
 	/**
-	 * look at article
+	 * Plays the sound files of the scenarios and posts their messages to the outbound queue of the Communicator
 	 */
-	private void performPoint() {
-		Communicator.getInstance().send("expression", "happy%100");
-		Communicator.getInstance().send("gazex", "130");
-		Communicator.getInstance().send("gazey", "-80");
-		playMessage("/message_lookhere.wav");
-		try {
-			Thread.sleep(500);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-		Communicator.getInstance().send("expression", "happy%50");
-		Communicator.getInstance().send("gazex", "0");
-		Communicator.getInstance().send("gazey", "0");
-	}
+	private class Output implements ScenarioPlayer.Output {
 
-	/**
-	 * ask user to follow
-	 */
-	private void performFollow() {
-		Communicator.getInstance().send("expression", "happy%80");
-		playMessage("/message_followme.wav");
-		Communicator.getInstance().send("expression", "relaxed%60");
+		private Playback playback;
+
+		@Override
+		public void send(String data) {
+			Communicator.getInstance().postData(data);
+		}
+
+		/**
+		 * Try to play the specified sound file. Playback runs in the background.
+		 * 
+		 * @param file
+		 *            name of the soundfile in the /res folder
+		 */
+		@Override
+		public void play(String file, final Runnable stopped) {
+			stop();
+			// the mouth stops moving before talking is set to false
+			Runnable finished = () -> {
+				lipSync.stop();
+				stopped.run();
+			};
+			try {
+				playback = clips.isStreamed(file) ? new LinePlayback(file, finished)
+						: new ClipPlayback(clips.get(file), finished);
+				lipSync.start(file, playback::getFramePosition);
+			} catch (Exception e) {
+				MainWindow.getInstance().print(e.getClass() + ":" + e.getMessage());
+				stopped.run();
+			}
+		}
+
+		@Override
+		public void stop() {
+			if (playback != null) {
+				playback.stop();
+				playback = null;
+			}
+		}
 	}
 
 	/**
-	 * perform the question action
+	 * A playing sound that reports the end of the playback once, when it has been played to the end or when it is
+	 * stopped before.
 	 */
-	private void performError() {
-		Communicator.getInstance().send("expression", "sad%100");
-		playMessage("/message_didnotunderstand.wav");
-		Communicator.getInstance().send("expression", "sad%60");
+	private abstract static class Playback {
+
+		private final Runnable stopped;
+		private final AtomicBoolean done = new AtomicBoolean();
+
+		Playback(Runnable stopped) {
+			this.stopped = stopped;
+		}
+
+		abstract void stop();
+
+		/**
+		 * @return the frame of the sound that is playing now
+		 */
+		abstract long getFramePosition();
+
+		/**
+		 * Called once before the end is reported
+		 */
+		abstract void release();
+
+		final void finish() {
+			if (done.compareAndSet(false, true)) {
+				release();
+				stopped.run();
+			}
+		}
 	}
 
 	/**
-	 * introduce the robot
+	 * Plays a cached clip from the beginning. The end is reported when the clip sends its STOP event or when it is
+	 * stopped before it has started.
 	 */
-	private void performIntroduction() {
-		Communicator.getInstance().send("expression", "exited%50");
-		playMessage("/message_hello.wav");
-		Communicator.getInstance().send("expression", "happy%40");
+	private static class ClipPlayback extends Playback implements LineListener {
+
+		private final Clip clip;
+
+		ClipPlayback(Clip clip, Runnable stopped) {
+			super(stopped);
+			this.clip = clip;
+			clip.stop();
+			clip.setFramePosition(0);
+			clip.addLineListener(this);
+			clip.start();
+		}
+
+		@Override
+		public void update(LineEvent event) {
+			if (event.getType() == LineEvent.Type.STOP) {
+				finish();
+			}
+		}
+
+		@Override
+		void stop() {
+			clip.stop();
+			finish();
+		}
+
+		@Override
+		long getFramePosition() {
+			return clip.getLongFramePosition();
+		}
+
+		@Override
+		void release() {
+			clip.removeLineListener(this);
+		}
 	}
 
 	/**
-	 * Try to play the specified sound file. Set "talking" parameter to true
-	 * before starting the clip and set it to false once the clip has finished
-	 * 
-	 * @param file
-	 *            name of the soundfile in the /res folder
+	 * Streams a long sound from its resource to a SourceDataLine on a thread of its own, so only a buffer of it is in
+	 * memory at a time. The end is reported when the last buffer has been played or when it is stopped.
 	 */
-	private void playMessage(String file) {
-		try {
-			InputStream in = getClass().getResourceAsStream(file);
-			InputStream bufferedIn = new BufferedInputStream(in);
-			AudioInputStream sound = AudioSystem
-					.getAudioInputStream(bufferedIn);
-			clip = AudioSystem.getClip();
-			clip.open(sound);
-			clip.setFramePosition(0);
+	private static class LinePlayback extends Playback {
 
-			Communicator.getInstance().send("talking", "true");
-			clip.start();
-			Thread.sleep(clip.getMicrosecondLength() / 1000);
-			Communicator.getInstance().send("talking", "false");
-		} catch (Exception e) {
-			MainWindow.getInstance().print(e.getClass() + ":" + e.getMessage());
+		private final AudioInputStream sound;
+		private final SourceDataLine line;
+		private volatile boolean stopping;
+
+		LinePlayback(String resource, Runnable stopped) throws IOException {
+			super(stopped);
+			InputStream in = ScenarioWindow.class.getResourceAsStream(resource);
+			if (in == null) {
+				throw new IOException(resource + " not found");
+			}
+			try {
+				AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(in));
+				AudioFormat format = source.getFormat();
+				if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+						&& format.getEncoding() != AudioFormat.Encoding.PCM_UNSIGNED) {
+					format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+							format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+					source = AudioSystem.getAudioInputStream(format, source);
+				}
+				sound = source;
+				line = AudioSystem.getSourceDataLine(format);
+				line.open(format);
+			} catch (UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException e) {
+				in.close();
+				throw new IOException(resource + ": " + e.getMessage(), e);
+			}
+			line.start();
+			ThreadMode.getDefault().newThreadFactory("emofani-sound").newThread(this::stream).start();
+		}
+
+		private void stream() {
+			byte[] buffer = new byte[Math.max(1, line.getBufferSize() / 4 / line.getFormat().getFrameSize())
+					* line.getFormat().getFrameSize()];
+			try {
+				for (int read; !stopping && (read = sound.read(buffer)) >= 0;) {
+					line.write(buffer, 0, read);
+				}
+				if (!stopping) {
+					line.drain();
+				}
+			} catch (IOException e) {
+				MainWindow.getInstance().print("Error: " + e.getMessage());
+			} finally {
+				line.close();
+				try {
+					sound.close();
+				} catch (IOException e) {
+					// nothing left to read
+				}
+			}
+			finish();
+		}
+
+		@Override
+		void stop() {
+			stopping = true;
+			line.stop();
+			// lets a blocked write() return
+			line.flush();
+			finish();
+		}
+
+		@Override
+		long getFramePosition() {
+			return line.getLongFramePosition();
+		}
+
+		@Override
+		void release() {
+			// the streaming thread closes the line once it sees that it has been stopped
 		}
 	}
 
@@ -0,0 +1,45 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the ids (t) of the messages of a session. The sequence is seeded from the current time and every id is
+ * larger than the previous one, also if several ids are taken in the same millisecond or the system clock is set
+ * back. Emofani drops messages with smaller ids than the last one it applied, from any sender, so the sequence also
+ * moves forward with the clock while few messages are sent: a controller that started later doesn't get ids far
+ * ahead of one that has been running for a while.
+ */
+public class SequenceGenerator {
+
+	private final AtomicLong last;
+
+	/**
+	 * Starts a sequence at the current time
+	 */
+	public SequenceGenerator() {
+		this(System.currentTimeMillis());
+	}
+
+	/**
+	 * @param seed the first id
+	 */
+	public SequenceGenerator(long seed) {
+		last = new AtomicLong(seed - 1);
+	}
+
+	/**
+	 * @return the next id, the current time in milliseconds unless that isn't larger than the previous id
+	 */
+	public long next() {
+		long now = System.currentTimeMillis();
+		return last.updateAndGet(previous -> Math.max(previous + 1, now));
+	}
+
+	/**
+	 * @return the id handed out last
+	 */
+	public long getLast() {
+		return last.get();
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the messages sent to Emofani and the status messages received from it to an append-only file, so a session
+ * can be examined or played again by the SessionReplayer later.
+ *
+ * The file is mapped into memory in regions of a few megabytes, so recording a message only copies it into the
+ * mapping and doesn't call into the operating system; the operating system writes the pages to disk in the
+ * background, also if the process crashes. It starts with a header of MAGIC, VERSION and the wall clock time of the
+ * start of the recording in milliseconds. Every record consists of a type byte (the ordinal of its MessageLog.Direction
+ * plus 1), the nanoseconds since the start of the recording (8 bytes), the length of the text (2 bytes) and the text
+ * in ASCII. A type of 0 marks the end of the records, the unused rest of the last region is filled with zeros.
+ */
+public class SessionRecorder implements Closeable {
+
+	/** first bytes of a session file */
+	public static final long MAGIC = 0x454d4f4653455353L; // "EMOFSESS"
+
+	public static final int VERSION = 1;
+
+	/** length of the header */
+	static final int HEADER_LENGTH = 8 + 4 + 8;
+
+	/** length of a record without its text */
+	static final int RECORD_HEADER_LENGTH = 1 + 8 + 2;
+
+	/** longer texts are cut off */
+	static final int MAX_TEXT_LENGTH = 0xffff;
+
+	private static final int DEFAULT_REGION_SIZE = 4 << 20;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final int regionSize;
+	private final long start;
+	private MappedByteBuffer region;
+	// position of the region in the file
+	private long regionStart;
+	private long records;
+
+	/**
+	 * Creates the file, or replaces it if it exists, and starts recording
+	 * @param path the file
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public SessionRecorder(Path path) throws IOException {
+		this(path, DEFAULT_REGION_SIZE);
+	}
+
+	SessionRecorder(Path path, int regionSize) throws IOException {
+		this.path = path;
+		this.regionSize = regionSize;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.start = System.nanoTime();
+		try {
+			map(0);
+			region.putLong(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends a record with the current time
+	 * @param direction OUT for the data part of a sent message, IN for a received status message
+	 * @param text the message
+	 * @throws IOException if the file can't grow, e.g. because the disk is full
+	 */
+	public void record(MessageLog.Direction direction, CharSequence text) throws IOException {
+		append(direction, System.nanoTime() - start, text);
+	}
+
+	synchronized void append(MessageLog.Direction direction, long nanos, CharSequence text) throws IOException {
+		if (region == null) {
+			throw new IOException("The recording of " + path + " is closed");
+		}
+		int length = Math.min(text.length(), MAX_TEXT_LENGTH);
+		// a record never spans two regions, leave the rest of the region empty
+		if (region.remaining() < RECORD_HEADER_LENGTH + length + 1) {
+			map(regionStart + region.position());
+		}
+		region.put((byte) (direction.ordinal() + 1)).putLong(nanos).putShort((short) length);
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			region.put((byte) ((c < 0x80) ? c : '?'));
+		}
+		records++;
+	}
+
+	/**
+	 * Maps the next region, which has room for at least one record of the longest text
+	 */
+	private void map(long position) throws IOException {
+		int size = Math.max(regionSize, RECORD_HEADER_LENGTH + MAX_TEXT_LENGTH + 1);
+		region = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+		regionStart = position;
+	}
+
+	/**
+	 * @return the number of records written so far
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Writes the mapped regions to disk and cuts off the unused rest of the file. Records after close() fail.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (region == null) {
+			return;
+		}
+		long end = regionStart + region.position();
+		region.force();
+		region = null;
+		try {
+			channel.truncate(end);
+		} catch (IOException e) {
+			// some platforms don't truncate mapped files, the zeros after the last record mark its end anyway
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a header
+	 * @param buffer positioned at the start of the file, it is positioned after the header afterwards
+	 * @return the wall clock time the recording started at
+	 * @throws IOException if the buffer doesn't start with a header of a supported version
+	 */
+	static long readHeader(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER_LENGTH || buffer.getLong() != MAGIC) {
+			throw new IOException("Not a recorded session");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported session version " + version);
+		}
+		return buffer.getLong();
+	}
+
+}
@@ -0,0 +1,328 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Sends the messages of a session recorded by the SessionRecorder again, e.g. to reproduce a problem from the field or
+ * as a realistic load. The messages are sent with the gaps they were recorded with, divided by the speed; at speed 0
+ * they are sent as fast as possible, with at most a window of messages in flight. The recorded status messages are
+ * skipped, the new answers are counted.
+ */
+public class SessionReplayer {
+
+	private static final String USAGE = "Usage: java -jar emofaniInterfaceDemo.jar --replay [options] <file>\n"
+			+ "Sends the messages of a recorded session again.\n"
+			+ "  --speed <s>          1, 2, 10 or any other factor, max sends as fast as possible (default: 1)\n"
+			+ "  --host <host>        host where Emofani is running (default: localhost)\n"
+			+ "  --port <port>        port Emofani is listening on (default: 11000)\n"
+			+ "  --input-port <port>  port for status messages (default: 0, a free port)\n"
+			+ "  --transport <t>      udp or tcp (default: udp)\n"
+			+ "  --binary             send the compact binary format if Emofani accepts it\n"
+			+ "  --timeout <ms>       time to wait for a status message (default: 1000)\n"
+			+ "  --window <n>         maximum number of messages in flight (default: 1000)\n"
+			+ "  --list               print the records instead of sending them";
+
+	/**
+	 * A recorded message
+	 */
+	public static class Record {
+
+		private final MessageLog.Direction direction;
+		private final long nanos;
+		private final String text;
+
+		Record(MessageLog.Direction direction, long nanos, String text) {
+			this.direction = direction;
+			this.nanos = nanos;
+			this.text = text;
+		}
+
+		/**
+		 * @return OUT for the data part of a sent message, IN for a received status message
+		 */
+		public MessageLog.Direction getDirection() {
+			return direction;
+		}
+
+		/**
+		 * @return nanoseconds since the start of the recording
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%12.3f ms %s %s", nanos / 1e6, direction, text);
+		}
+	}
+
+	private final Path path;
+	private final AtomicLong ok = new AtomicLong(), errors = new AtomicLong(), timeouts = new AtomicLong(),
+			failed = new AtomicLong();
+	private long sent, maxLag;
+
+	/**
+	 * @param path a file written by the SessionRecorder
+	 */
+	public SessionReplayer(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Reads the records of the session one by one
+	 */
+	public class Reader implements AutoCloseable {
+
+		private final DataInputStream in;
+		private final long startMillis;
+		private final byte[] text = new byte[SessionRecorder.MAX_TEXT_LENGTH];
+
+		private Reader() throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+			byte[] header = new byte[SessionRecorder.HEADER_LENGTH];
+			try {
+				in.readFully(header);
+				startMillis = SessionRecorder.readHeader(ByteBuffer.wrap(header));
+			} catch (IOException e) {
+				in.close();
+				throw (e instanceof EOFException) ? new IOException("Not a recorded session") : e;
+			}
+		}
+
+		/**
+		 * @return the wall clock time the recording started at, in milliseconds
+		 */
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		/**
+		 * @return the next record or null at the end of the session
+		 * @throws IOException if the file can't be read or is corrupt
+		 */
+		public Record next() throws IOException {
+			int type;
+			try {
+				type = in.readUnsignedByte();
+				if (type == 0) {
+					return null;
+				}
+				if (type > MessageLog.Direction.values().length) {
+					throw new IOException("Invalid record type " + type);
+				}
+				long nanos = in.readLong();
+				int length = in.readUnsignedShort();
+				in.readFully(text, 0, length);
+				return new Record(MessageLog.Direction.values()[type - 1], nanos,
+						new String(text, 0, length, EmofaniClient.ASCII));
+			} catch (EOFException e) {
+				// a recording that wasn't closed may end in the middle of a record
+				return null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return a reader positioned at the first record
+	 * @throws IOException if the file can't be opened or isn't a recorded session
+	 */
+	public Reader open() throws IOException {
+		return new Reader();
+	}
+
+	/**
+	 * Sends the recorded messages and waits until all of them have been answered or failed
+	 * @param sender sends the data part of a message, e.g. EmofaniClient::sendData
+	 * @param speed factor the gaps between the messages are divided by, 0 sends as fast as possible
+	 * @param window maximum number of messages in flight
+	 * @return the number of sent messages
+	 */
+	public long replay(Function<String, CompletableFuture<FaceStatus>> sender, double speed, int window)
+			throws IOException, InterruptedException {
+		Semaphore inFlight = new Semaphore(window);
+		long start = System.nanoTime();
+		try (Reader reader = open()) {
+			Record record;
+			while ((record = reader.next()) != null) {
+				if (record.getDirection() != MessageLog.Direction.OUT) {
+					continue;
+				}
+				if (speed > 0) {
+					long due = start + (long) (record.getNanos() / speed);
+					for (long wait; (wait = due - System.nanoTime()) > 0;) {
+						LockSupport.parkNanos(wait);
+						if (Thread.interrupted()) {
+							throw new InterruptedException();
+						}
+					}
+					maxLag = Math.max(maxLag, System.nanoTime() - due);
+				}
+				inFlight.acquire();
+				sender.apply(record.getText()).whenComplete((status, error) -> {
+					if (error != null) {
+						(error instanceof TimeoutException ? timeouts : failed).incrementAndGet();
+					} else {
+						(status.isOk() ? ok : errors).incrementAndGet();
+					}
+					inFlight.release();
+				});
+				sent++;
+			}
+		} finally {
+			inFlight.acquire(window);
+		}
+		return sent;
+	}
+
+	public long getOkCount() {
+		return ok.get();
+	}
+
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return nanoseconds the most delayed message was sent after its time
+	 */
+	public long getMaxLag() {
+		return maxLag;
+	}
+
+	/**
+	 * Runs the replayer and exits with 0 if every message was answered with status OK
+	 * @param args options and the file, see USAGE
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args, System.out));
+	}
+
+	/**
+	 * Runs the replayer
+	 * @param args options and the file, see USAGE
+	 * @param out receives the records or the summary
+	 * @return 0 if every message was answered with status OK, 1 if not and 2 for invalid arguments
+	 */
+	static int run(String[] args, PrintStream out) {
+		EmofaniClient.Builder builder = EmofaniClient.builder().receivePort(0).timeout(1000);
+		String file = null;
+		double speed = 1;
+		int window = 1000;
+		boolean list = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--speed":
+					String value = args[++i];
+					speed = value.equals("max") ? 0 : Double.parseDouble(value);
+					break;
+				case "--host":
+					builder.host(args[++i]);
+					break;
+				case "--port":
+					builder.sendPort(Integer.parseInt(args[++i]));
+					break;
+				case "--input-port":
+					builder.receivePort(Integer.parseInt(args[++i]));
+					break;
+				case "--transport":
+					builder.transport(TransportType.valueOf(args[++i].toUpperCase()));
+					break;
+				case "--binary":
+					builder.binary(true);
+					break;
+				case "--timeout":
+					builder.timeout(Integer.parseInt(args[++i]));
+					break;
+				case "--window":
+					window = Integer.parseInt(args[++i]);
+					break;
+				case "--list":
+					list = true;
+					break;
+				default:
+					if (args[i].startsWith("--") || file != null) {
+						throw new IllegalArgumentException(args[i]);
+					}
+					file = args[i];
+				}
+			}
+			if (file == null) {
+				throw new IllegalArgumentException("no file");
+			}
+			if (speed < 0 || window < 1) {
+				throw new IllegalArgumentException("--speed can't be negative and --window has to be positive");
+			}
+		} catch (RuntimeException e) {
+			out.println("Invalid argument: " + e.getMessage());
+			out.println(USAGE);
+			return 2;
+		}
+
+		SessionReplayer replayer = new SessionReplayer(Paths.get(file));
+		if (list) {
+			try (Reader reader = replayer.open()) {
+				for (Record record = reader.next(); record != null; record = reader.next()) {
+					out.println(record);
+				}
+				return 0;
+			} catch (IOException e) {
+				out.println("Error: " + e.getMessage());
+				return 1;
+			}
+		}
+
+		try (EmofaniClient client = builder.build()) {
+			client.open();
+			long start = System.nanoTime();
+			long sent = replayer.replay(client::sendData, speed, window);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			out.printf("Replayed %d messages in %.3f s (most delayed by %.3f ms): %d OK, %d ERROR, %d timed out, "
+					+ "%d failed%n", sent, seconds, replayer.getMaxLag() / 1e6, replayer.getOkCount(),
+					replayer.getErrorCount(), replayer.getTimeoutCount(), replayer.getFailedCount());
+		} catch (IOException e) {
+			out.println("Error: " + e.getMessage());
+			return 1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		}
+
+		return (replayer.getErrorCount() == 0 && replayer.getTimeoutCount() == 0 && replayer.getFailedCount() == 0)
+				? 0 : 1;
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mirrors the parameters of one face, so a client can leave out parameters that wouldn't change anything, see
+ * Builder.cache(). A parameter is only left out if Emofani has acknowledged its current value with status OK and no
+ * other value for it is still on the way. Only the state parameters are mirrored; anything else, e.g. an action, is
+ * always sent.
+ *
+ * The values reported by every OK status are copied into the mirror, including status messages Emofani sends on its
+ * own, so changes made by other controllers or by the idle mode aren't skipped by mistake. Emofani doesn't report the
+ * expression, but sets arousal and pleasure with it; the expression is forgotten whenever they are changed in any
+ * other way.
+ */
+public class StateCache {
+
+	/** parameters that set a state and can be left out if the state already has their value */
+	private static final String[] PARAMETERS = { "arousal", "pleasure", "blush", "gazex", "gazey", "gazez",
+			"expression", "talking", "idle" };
+
+	private static final String EXPRESSION = "expression";
+
+	private static class Entry {
+		String value;
+		long id;
+
+		Entry(String value, long id) {
+			this.value = value;
+			this.id = id;
+		}
+	}
+
+	// values Emofani acknowledged, and the newest value sent for every parameter
+	private final Map<String, Entry> acknowledged = new HashMap<String, Entry>();
+	private final Map<String, Entry> sent = new HashMap<String, Entry>();
+	private FaceStatus lastStatus;
+
+	/**
+	 * Leaves out the parameters that already have their value
+	 * @param data one or more comma separated key=value pairs
+	 * @return the pairs that change something, null if none of them does
+	 */
+	public synchronized String delta(String data) {
+		if (lastStatus == null) {
+			return data;
+		}
+		StringBuilder delta = null;
+		for (String pair : data.split(",")) {
+			int separator = pair.indexOf('=');
+			if (separator < 0 || !isUnchanged(pair.substring(0, separator).trim(), pair.substring(separator + 1))) {
+				delta = (delta == null) ? new StringBuilder() : delta.append(',');
+				delta.append(pair);
+			}
+		}
+		return (delta == null) ? null : (delta.length() == data.length()) ? data : delta.toString();
+	}
+
+	private boolean isUnchanged(String param, String value) {
+		Entry acked = acknowledged.get(param), newest = sent.get(param);
+		return acked != null && equal(acked.value, value) && (newest == null || equal(newest.value, value));
+	}
+
+	/**
+	 * Notes the values of a sent message, they are only mirrored once Emofani acknowledges them
+	 * @param id id (t) of the message
+	 * @param data its data part
+	 */
+	public synchronized void sent(long id, String data) {
+		for (String pair : data.split(",")) {
+			int separator = pair.indexOf('=');
+			String param = (separator < 0) ? null : pair.substring(0, separator).trim();
+			if (param != null && isCached(param)) {
+				sent.put(param, new Entry(pair.substring(separator + 1), id));
+			}
+		}
+	}
+
+	/**
+	 * Mirrors the values of a message Emofani answered
+	 * @param id id (t) of the message
+	 * @param data its data part
+	 * @param status the answer, only an OK status applies the values
+	 */
+	public synchronized void acknowledged(long id, String data, FaceStatus status) {
+		if (!status.isOk()) {
+			return;
+		}
+		update(status);
+		boolean expression = false, mood = false;
+		for (String pair : data.split(",")) {
+			int separator = pair.indexOf('=');
+			String param = (separator < 0) ? null : pair.substring(0, separator).trim();
+			if (param == null || !isCached(param)) {
+				continue;
+			}
+			Entry entry = acknowledged.get(param);
+			if (entry != null && entry.id > id) {
+				// a newer message has been acknowledged before this one
+				continue;
+			}
+			acknowledged.put(param, new Entry(pair.substring(separator + 1), id));
+			expression |= param.equals(EXPRESSION);
+			mood |= param.equals("arousal") || param.equals("pleasure");
+		}
+		if (mood && !expression) {
+			acknowledged.remove(EXPRESSION);
+		}
+	}
+
+	/**
+	 * Copies the reported values of an OK status into the mirror
+	 * @param status any status received from Emofani
+	 */
+	public synchronized void update(FaceStatus status) {
+		if (!status.isOk()) {
+			return;
+		}
+		lastStatus = status;
+		boolean mood = report("arousal", status, FaceState.AROUSAL, String.valueOf(status.getArousal()));
+		mood |= report("pleasure", status, FaceState.PLEASURE, String.valueOf(status.getPleasure()));
+		if (mood) {
+			acknowledged.remove(EXPRESSION);
+		}
+		report("blush", status, FaceState.BLUSH, String.valueOf(status.getBlush()));
+		report("gazex", status, FaceState.GAZE_X, String.valueOf(status.getGazeX()));
+		report("gazey", status, FaceState.GAZE_Y, String.valueOf(status.getGazeY()));
+		report("gazez", status, FaceState.GAZE_Z, String.valueOf(status.getGazeZ()));
+		report("talking", status, FaceState.TALKING, String.valueOf(status.isTalking()));
+		report("idle", status, FaceState.IDLE, String.valueOf(status.isIdle()));
+	}
+
+	/**
+	 * @return true if the mirrored value has changed
+	 */
+	private boolean report(String param, FaceStatus status, int field, String value) {
+		if (status.getMissingFields(field) != 0) {
+			return false;
+		}
+		Entry entry = acknowledged.get(param);
+		if (entry == null) {
+			acknowledged.put(param, new Entry(value, status.getId()));
+			return false;
+		}
+		if (equal(entry.value, value)) {
+			return false;
+		}
+		entry.value = value;
+		return true;
+	}
+
+	/**
+	 * Forgets all values, e.g. after Emofani has been restarted. The next message sends every parameter.
+	 */
+	public synchronized void clear() {
+		acknowledged.clear();
+		sent.clear();
+		lastStatus = null;
+	}
+
+	/**
+	 * @param param the name of a parameter
+	 * @return the acknowledged value, null if it isn't known
+	 */
+	public synchronized String get(String param) {
+		Entry entry = acknowledged.get(param);
+		return (entry == null) ? null : entry.value;
+	}
+
+	/**
+	 * @return the last OK status Emofani sent, null if there was none since the last clear()
+	 */
+	public synchronized FaceStatus getLastStatus() {
+		return lastStatus;
+	}
+
+	private static boolean isCached(String param) {
+		for (String cached : PARAMETERS) {
+			if (cached.equals(param)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compares values like Emofani does, e.g. "True" and "true" or "+5" and "5" are the same
+	 */
+	private static boolean equal(String a, String b) {
+		a = a.trim();
+		b = b.trim();
+		if (a.equalsIgnoreCase(b)) {
+			return true;
+		}
+		try {
+			return Integer.parseInt(a) == Integer.parseInt(b);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads status messages sent by Emofani in a single pass over the bytes of the received datagram:
+ *
+ * status:[status];t:[id];arousal:[arousal];pleasure:[pleasure];blush:[blush];gazex:[gazex];gazey:[gazey];
+ * gazez:[gazez];talking:[talking];idle:[idle];error:"[error]"
+ *
+ * The values are written into a reusable FaceState. Unknown keys are skipped, missing and malformed values are
+ * reported through the field bitmasks of the FaceState instead of exceptions. Nothing is allocated.
+ */
+public class StatusParser {
+
+	private static final byte[] STATUS = Ascii.ascii("status"), ID = Ascii.ascii("t"),
+			AROUSAL = Ascii.ascii("arousal"), PLEASURE = Ascii.ascii("pleasure"), BLUSH = Ascii.ascii("blush"),
+			GAZE_X = Ascii.ascii("gazex"), GAZE_Y = Ascii.ascii("gazey"), GAZE_Z = Ascii.ascii("gazez"),
+			TALKING = Ascii.ascii("talking"), IDLE = Ascii.ascii("idle"), ERROR = Ascii.ascii("error"),
+			OK = Ascii.ascii("OK"), TRUE = Ascii.ascii("true"), FALSE = Ascii.ascii("false");
+
+	private StatusParser() {
+		// only static methods
+	}
+
+	/**
+	 * Parses the bytes between position and limit of the buffer. Position and limit are not changed.
+	 * @param buffer contains the status message
+	 * @param state receives the parameters, it is cleared first
+	 * @return true if the message contained a status field
+	 */
+	public static boolean parse(ByteBuffer buffer, FaceState state) {
+		state.clear();
+
+		int end = buffer.limit();
+		int i = buffer.position();
+		while (i < end) {
+
+			// key
+			int keyStart = i;
+			while (i < end && buffer.get(i) != ':' && buffer.get(i) != ';') {
+				i++;
+			}
+			int keyEnd = i;
+			if (i >= end || buffer.get(i) == ';') {
+				// segment without a value
+				i++;
+				continue;
+			}
+			i++;
+
+			// value, the error description may be quoted and contain any character except quotes
+			int valueStart = i;
+			int valueEnd;
+			if (i < end && buffer.get(i) == '"') {
+				valueStart = ++i;
+				while (i < end && buffer.get(i) != '"') {
+					i++;
+				}
+				valueEnd = i;
+				while (i < end && buffer.get(i) != ';') {
+					i++;
+				}
+			} else {
+				while (i < end && buffer.get(i) != ';') {
+					i++;
+				}
+				valueEnd = trimEnd(buffer, valueStart, i);
+			}
+			i++;
+
+			setField(buffer, keyStart, keyEnd, valueStart, valueEnd, state);
+		}
+
+		return state.has(FaceState.STATUS);
+	}
+
+	private static void setField(ByteBuffer b, int keyStart, int keyEnd, int start, int end, FaceState state) {
+		int field;
+		boolean valid = true;
+		if (Ascii.equal(b, keyStart, keyEnd, AROUSAL)) {
+			field = FaceState.AROUSAL;
+			valid = Ascii.isNumber(b, start, end);
+			state.arousal = (int) Ascii.parseNumber(b, start, end);
+		} else if (Ascii.equal(b, keyStart, keyEnd, PLEASURE)) {
+			field = FaceState.PLEASURE;
+			valid = Ascii.isNumber(b, start, end);
+			state.pleasure = (int) Ascii.parseNumber(b, start, end);
+		} else if (Ascii.equal(b, keyStart, keyEnd, GAZE_X)) {
+			field = FaceState.GAZE_X;
+			valid = Ascii.isNumber(b, start, end);
+			state.gazeX = (int) Ascii.parseNumber(b, start, end);
+		} else if (Ascii.equal(b, keyStart, keyEnd, GAZE_Y)) {
+			field = FaceState.GAZE_Y;
+			valid = Ascii.isNumber(b, start, end);
+			state.gazeY = (int) Ascii.parseNumber(b, start, end);
+		} else if (Ascii.equal(b, keyStart, keyEnd, GAZE_Z)) {
+			field = FaceState.GAZE_Z;
+			valid = Ascii.isNumber(b, start, end);
+			state.gazeZ = (int) Ascii.parseNumber(b, start, end);
+		} else if (Ascii.equal(b, keyStart, keyEnd, BLUSH)) {
+			field = FaceState.BLUSH;
+			valid = Ascii.isNumber(b, start, end);
+			state.blush = (int) Ascii.parseNumber(b, start, end);
+		} else if (Ascii.equal(b, keyStart, keyEnd, TALKING)) {
+			field = FaceState.TALKING;
+			state.talking = Ascii.equalIgnoreCase(b, start, end, TRUE);
+			valid = state.talking || Ascii.equalIgnoreCase(b, start, end, FALSE);
+		} else if (Ascii.equal(b, keyStart, keyEnd, IDLE)) {
+			field = FaceState.IDLE;
+			state.idle = Ascii.equalIgnoreCase(b, start, end, TRUE);
+			valid = state.idle || Ascii.equalIgnoreCase(b, start, end, FALSE);
+		} else if (Ascii.equal(b, keyStart, keyEnd, ID)) {
+			field = FaceState.ID;
+			valid = Ascii.isNumber(b, start, end);
+			state.id = valid ? Ascii.parseNumber(b, start, end) : FaceStatus.NO_ID;
+		} else if (Ascii.equal(b, keyStart, keyEnd, STATUS)) {
+			field = FaceState.STATUS;
+			state.ok = Ascii.equal(b, start, end, OK);
+		} else if (Ascii.equal(b, keyStart, keyEnd, ERROR)) {
+			field = FaceState.ERROR;
+			int length = Math.min(end - start, FaceState.MAX_ERROR_LENGTH);
+			for (int i = 0; i < length; i++) {
+				state.error[i] = b.get(start + i);
+			}
+			state.errorLength = length;
+		} else {
+			return;
+		}
+
+		if (valid) {
+			state.fields |= field;
+		} else {
+			state.invalidFields |= field;
+		}
+	}
+
+	/**
+	 * Ignores trailing whitespace and null bytes, e.g. from a padded buffer
+	 */
+	private static int trimEnd(ByteBuffer b, int start, int end) {
+		while (end > start && (b.get(end - 1) <= ' ')) {
+			end--;
+		}
+		return end;
+	}
+
+}
@@ -0,0 +1,292 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.Closeable;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sends every message to several Emofani instances at once, e.g. to the faces on several displays. Every target has
+ * its own EmofaniClient and a single-thread executor that sends the messages to it in order. The send itself is a
+ * blocking write to the client's socket, but the executor doesn't wait for the answer, which the client's receiver
+ * thread reports. So a target that is slow to connect or doesn't answer only holds up its own executor, not the
+ * others. The executors run on virtual threads if the group is created with ThreadMode.VIRTUAL, so large groups don't
+ * need a platform thread per target.
+ *
+ * The answers are collected per target in a Result, which completes as soon as the Mode is decided: all targets
+ * answered OK (ALL), one of them did (ANY) or more than half of them did (QUORUM), or so many failed that this can't
+ * happen anymore.
+ *
+ * Example: new TargetGroup(clients, TargetGroup.Mode.QUORUM).sendData("expression=happy%50").get().isSuccess()
+ */
+public class TargetGroup implements Closeable {
+
+	/**
+	 * How many targets have to answer OK for a message to succeed
+	 */
+	public enum Mode {
+		ALL, ANY, QUORUM;
+
+		/**
+		 * @param targets number of targets
+		 * @return number of OK answers needed
+		 */
+		public int getRequired(int targets) {
+			switch (this) {
+			case ANY:
+				return Math.min(1, targets);
+			case QUORUM:
+				return targets / 2 + 1;
+			default:
+				return targets;
+			}
+		}
+	}
+
+	/**
+	 * The answers of the targets to one message. Answers that arrive after the result has completed are still added.
+	 */
+	public static class Result {
+
+		private final List<EmofaniClient> targets;
+		private final int required;
+		private final AtomicReferenceArray<FaceStatus> statuses;
+		private final AtomicReferenceArray<Throwable> errors;
+		private final AtomicInteger ok = new AtomicInteger(), failed = new AtomicInteger();
+		private final CompletableFuture<Result> future = new CompletableFuture<Result>();
+
+		Result(List<EmofaniClient> targets, int required) {
+			this.targets = targets;
+			this.required = required;
+			this.statuses = new AtomicReferenceArray<FaceStatus>(targets.size());
+			this.errors = new AtomicReferenceArray<Throwable>(targets.size());
+			if (required == 0) {
+				future.complete(this);
+			}
+		}
+
+		void complete(int target, FaceStatus status, Throwable error) {
+			statuses.set(target, status);
+			errors.set(target, error);
+			if (error == null && status.isOk()) {
+				if (ok.incrementAndGet() >= required) {
+					future.complete(this);
+				}
+			} else if (failed.incrementAndGet() > targets.size() - required) {
+				future.complete(this);
+			}
+		}
+
+		/**
+		 * @return number of targets the message was sent to
+		 */
+		public int getTargets() {
+			return targets.size();
+		}
+
+		/**
+		 * @return true if enough targets answered OK
+		 */
+		public boolean isSuccess() {
+			return ok.get() >= required;
+		}
+
+		/**
+		 * @return number of targets that answered OK so far
+		 */
+		public int getOkCount() {
+			return ok.get();
+		}
+
+		/**
+		 * @return number of targets that answered with an error, didn't answer in time or couldn't be reached so far
+		 */
+		public int getFailedCount() {
+			return failed.get();
+		}
+
+		/**
+		 * @return number of OK answers the message needs to succeed
+		 */
+		public int getRequired() {
+			return required;
+		}
+
+		/**
+		 * @param target index of the target
+		 * @return the status the target answered with, null if it hasn't answered (yet)
+		 */
+		public FaceStatus getStatus(int target) {
+			return statuses.get(target);
+		}
+
+		/**
+		 * @param target index of the target
+		 * @return the reason why the target didn't answer, e.g. a TimeoutException, or null
+		 */
+		public Throwable getError(int target) {
+			return errors.get(target);
+		}
+
+		/**
+		 * @return the status of the first target that answered OK, or else of the first target that answered at all.
+		 *         null if no target answered.
+		 */
+		public FaceStatus getStatus() {
+			FaceStatus any = null;
+			for (int i = 0; i < statuses.length(); i++) {
+				FaceStatus status = statuses.get(i);
+				if (status != null && status.isOk()) {
+					return status;
+				}
+				any = (any == null) ? status : any;
+			}
+			return any;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			text.append(ok.get()).append(" of ").append(targets.size()).append(" faces answered OK");
+			for (int i = 0; i < targets.size(); i++) {
+				EmofaniClient target = targets.get(i);
+				FaceStatus status = statuses.get(i);
+				Throwable error = errors.get(i);
+				text.append(i == 0 ? ": " : ", ").append(target.getHost()).append(':').append(target.getSendPort())
+						.append(' ').append((status != null) ? (status.isOk() ? "OK" : "ERROR")
+								: (error != null) ? error.getClass().getSimpleName() : "pending");
+			}
+			return text.toString();
+		}
+	}
+
+	private final List<EmofaniClient> targets;
+	private final List<ExecutorService> senders = new ArrayList<ExecutorService>();
+	private final Mode mode;
+	private volatile boolean closed;
+
+	/**
+	 * @param targets a client for every target, they are closed with the group
+	 * @param mode how many targets have to answer OK
+	 */
+	public TargetGroup(List<EmofaniClient> targets, Mode mode) {
+		this(targets, mode, ThreadMode.PLATFORM);
+	}
+
+	/**
+	 * @param targets a client for every target, they are closed with the group
+	 * @param mode how many targets have to answer OK
+	 * @param threadMode the kind of the sender threads
+	 */
+	public TargetGroup(List<EmofaniClient> targets, Mode mode, ThreadMode threadMode) {
+		this.targets = Collections.unmodifiableList(new ArrayList<EmofaniClient>(targets));
+		this.mode = mode;
+		for (EmofaniClient target : this.targets) {
+			String name = "emofani-group-" + target.getHost() + ":" + target.getSendPort();
+			senders.add(Executors.newSingleThreadExecutor(threadMode.newThreadFactory(name)));
+		}
+	}
+
+	/**
+	 * Reads a list of targets
+	 * @param list comma separated host[:port] entries, e.g. "192.168.2.10, 192.168.2.11:11002"
+	 * @param builder configures the clients, the host and the port are set for every target. Every target after the
+	 *            first receives its status messages on a free port, so the answers of different targets don't end up on
+	 *            the same socket.
+	 * @param defaultPort port of entries without one
+	 * @return a client for every entry
+	 * @throws IllegalArgumentException if the list is empty or a port isn't a number
+	 */
+	public static List<EmofaniClient> parseTargets(String list, EmofaniClient.Builder builder, int defaultPort) {
+		List<EmofaniClient> clients = new ArrayList<EmofaniClient>();
+		for (String entry : list.split(",")) {
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			// more than one colon is an IPv6 address without a port
+			int colon = entry.lastIndexOf(':');
+			boolean hasPort = colon > 0 && entry.indexOf(':') == colon;
+			builder.host(hasPort ? entry.substring(0, colon) : entry);
+			builder.sendPort(hasPort ? Integer.parseInt(entry.substring(colon + 1).trim()) : defaultPort);
+			clients.add(builder.build());
+			builder.receivePort(0);
+		}
+		if (clients.isEmpty()) {
+			throw new IllegalArgumentException("No target in \"" + list + "\"");
+		}
+		return clients;
+	}
+
+	/**
+	 * Sends the data part of a message to every target without waiting for the answers.
+	 * @param data one or more comma separated key=value pairs
+	 * @return a future that completes with the answers as soon as the mode is decided
+	 */
+	public CompletableFuture<Result> sendData(final String data) {
+		final Result result = new Result(targets, mode.getRequired(targets.size()));
+		for (int i = 0; i < targets.size(); i++) {
+			final int target = i;
+			final EmofaniClient client = targets.get(i);
+			try {
+				senders.get(i).execute(() -> {
+					if (closed) {
+						result.complete(target, null, new ClosedChannelException());
+						return;
+					}
+					// an exception must not leave the result of the target open forever
+					try {
+						client.sendData(data).whenComplete((status, error) -> result.complete(target, status, error));
+					} catch (RuntimeException e) {
+						result.complete(target, null, e);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				result.complete(target, null, e);
+			}
+		}
+		return result.future;
+	}
+
+	/**
+	 * @return the clients of the targets, in the order of the list
+	 */
+	public List<EmofaniClient> getTargets() {
+		return targets;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Closes all clients and stops the sender threads. Messages that haven't been handed to a client yet fail.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		// shutdownNow() would interrupt a sender and close its channel while it writes
+		for (ExecutorService sender : senders) {
+			sender.shutdown();
+		}
+		try {
+			for (ExecutorService sender : senders) {
+				sender.awaitTermination(1, TimeUnit.SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (EmofaniClient target : targets) {
+			target.close();
+		}
+	}
+
+}
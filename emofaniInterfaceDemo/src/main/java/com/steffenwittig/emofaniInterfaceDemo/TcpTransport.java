@@ -0,0 +1,166 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sends messages over a persistent TCP connection to Emofani. Every message is preceded by its length as a 4 byte big
+ * endian integer, status messages come back the same way on the same connection, in the order of the messages. There
+ * is no handshake per message and no second port, and the connection isn't affected by lost datagrams or firewalls
+ * that block the input port.
+ *
+ * A broken connection is reported to the receiver right away, so pending messages don't have to wait for their
+ * timeout. The next open() connects again.
+ */
+public class TcpTransport implements Transport {
+
+	/** longest message that is accepted, anything longer means the stream is out of step */
+	static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+	private static final int CONNECT_TIMEOUT = 2000;
+
+	private final String host;
+	private final int port;
+	private final ThreadFactory threads;
+
+	private SocketChannel channel;
+	private final ByteBuffer header = ByteBuffer.allocate(4);
+	private final ByteBuffer[] frame = { header, null };
+	private String source;
+	private int localPort;
+
+	/**
+	 * @param host Name or address of the host where Emofani is running
+	 * @param port Port Emofani is listening on
+	 */
+	public TcpTransport(String host, int port) {
+		this(host, port, ThreadMode.PLATFORM.newThreadFactory("emofani-receiver"));
+	}
+
+	/**
+	 * @param host Name or address of the host where Emofani is running
+	 * @param port Port Emofani is listening on
+	 * @param threads creates the receiver thread
+	 */
+	public TcpTransport(String host, int port, ThreadFactory threads) {
+		this.host = host;
+		this.port = port;
+		this.threads = threads;
+	}
+
+	@Override
+	public synchronized void open(Receiver receiver) throws IOException {
+		close();
+		SocketChannel channel = SocketChannel.open();
+		try {
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+			channel.socket().connect(new InetSocketAddress(InetAddress.getByName(host), port), CONNECT_TIMEOUT);
+			InetSocketAddress local = (InetSocketAddress) channel.getLocalAddress();
+			source = local.getAddress().getHostAddress();
+			localPort = local.getPort();
+		} catch (IOException e) {
+			UdpTransport.closeQuietly(channel);
+			throw e;
+		}
+		this.channel = channel;
+
+		threads.newThread(() -> receive(channel, receiver)).start();
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return channel != null && channel.isOpen();
+	}
+
+	@Override
+	public synchronized int send(ByteBuffer message) throws IOException {
+		if (channel == null) {
+			throw new ClosedChannelException();
+		}
+		int length = message.remaining();
+		header.clear();
+		header.putInt(length).flip();
+		frame[1] = message;
+		try {
+			// header and message in one write, so they go out in one segment despite TCP_NODELAY
+			long written = 0;
+			while (written < length + 4) {
+				written += channel.write(frame);
+			}
+		} finally {
+			frame[1] = null;
+		}
+		return length + 4;
+	}
+
+	@Override
+	public synchronized String getSourceAddress() {
+		return source;
+	}
+
+	/**
+	 * @return the local port of the connection, Emofani answers on the connection anyway
+	 */
+	@Override
+	public synchronized int getReceivePort() {
+		return localPort;
+	}
+
+	@Override
+	public synchronized void close() {
+		UdpTransport.closeQuietly(channel);
+		channel = null;
+	}
+
+	/**
+	 * Reads frames until the connection is closed
+	 */
+	private void receive(SocketChannel channel, Receiver receiver) {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		try {
+			while (true) {
+				length.clear();
+				readFully(channel, length);
+				int size = length.getInt(0);
+				if (size < 0 || size > MAX_FRAME_LENGTH) {
+					throw new IOException("Invalid frame length " + size);
+				}
+				if (size > buffer.capacity()) {
+					buffer = ByteBuffer.allocate(size);
+				}
+				buffer.clear().limit(size);
+				readFully(channel, buffer);
+				buffer.flip();
+				receiver.received(buffer);
+			}
+		} catch (ClosedChannelException e) {
+			// closed by close()
+		} catch (IOException e) {
+			synchronized (this) {
+				if (this.channel != channel) {
+					return;
+				}
+				close();
+			}
+			receiver.disconnected(e);
+		}
+	}
+
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Connection closed by Emofani");
+			}
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The kind of threads that run the per-target work: the receiver thread of every EmofaniClient, the sender thread of
+ * every target of a TargetGroup and the scenario threads. Platform threads are the default. Virtual threads are much
+ * cheaper to create and to keep blocked, so hundreds of targets or blocking sends don't need hundreds of operating
+ * system threads.
+ *
+ * Virtual threads need Java 21 or newer. They are looked up by reflection, so the code still builds and runs on
+ * Java 17; there VIRTUAL falls back to platform threads.
+ *
+ * The GUI and the command line tools take the mode from the system property "emofani.threads" (platform or
+ * virtual), e.g. java -Demofani.threads=virtual -jar emofaniInterfaceDemo.jar.
+ */
+public enum ThreadMode {
+
+	PLATFORM, VIRTUAL;
+
+	/** system property with the default mode */
+	public static final String PROPERTY = "emofani.threads";
+
+	// Thread.ofVirtual(), null if the JVM has no virtual threads
+	private static final Method OF_VIRTUAL = findOfVirtual();
+
+	/**
+	 * @return true if threads of this mode can be created by this JVM
+	 */
+	public boolean isAvailable() {
+		return this == PLATFORM || OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return this mode if it is available, PLATFORM otherwise
+	 */
+	public ThreadMode resolve() {
+		return isAvailable() ? this : PLATFORM;
+	}
+
+	/**
+	 * Creates a factory for the threads of a task. Platform threads are daemon threads, like virtual threads always
+	 * are, so they don't keep the JVM running.
+	 * @param name name of the threads, a number is added if the factory creates more than one
+	 * @return the factory
+	 */
+	public ThreadFactory newThreadFactory(final String name) {
+		if (resolve() == VIRTUAL) {
+			try {
+				Object builder = OF_VIRTUAL.invoke(null);
+				builder = builder.getClass().getMethod("name", String.class).invoke(builder, name);
+				final ThreadFactory factory = (ThreadFactory) builder.getClass().getMethod("factory").invoke(builder);
+				return numbered(name, factory);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				// not the API this was written against, fall back
+			}
+		}
+		return numbered(name, runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Names the threads after the first one "name-2", "name-3" etc.
+	 */
+	private static ThreadFactory numbered(final String name, final ThreadFactory factory) {
+		final AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = factory.newThread(runnable);
+			int number = count.incrementAndGet();
+			if (number > 1) {
+				thread.setName(name + "-" + number);
+			}
+			return thread;
+		};
+	}
+
+	/**
+	 * @return the mode set by the system property "emofani.threads", PLATFORM if it isn't set. VIRTUAL is resolved to
+	 *         PLATFORM if the JVM has no virtual threads.
+	 */
+	public static ThreadMode getDefault() {
+		String mode = System.getProperty(PROPERTY, "platform");
+		try {
+			return valueOf(mode.trim().toUpperCase()).resolve();
+		} catch (IllegalArgumentException e) {
+			return PLATFORM;
+		}
+	}
+
+	private static Method findOfVirtual() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			// throws on Java 19 and 20 unless preview features are enabled
+			ofVirtual.invoke(null);
+			return ofVirtual;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A scenario as a list of steps at fixed offsets from its start, read from a text file with one step per line:
+ *
+ * [offset] [command] [argument]
+ *
+ * - offset: milliseconds after the start of the scenario, or "end" / "end+[ms]" for the end of the clip played by
+ *   the previous play step
+ * - send [data]: sends a message, e.g. "send expression=happy%100,gazex=130"
+ * - play [resource]: plays a sound file and sets talking to true while it plays, e.g. "play /message_hello.wav"
+ * - wait: does nothing, but the scenario runs until this offset
+ *
+ * Empty lines and lines starting with # are skipped. Steps are sorted by offset; steps with the same offset keep the
+ * order of the file.
+ */
+public class Timeline {
+
+	/**
+	 * A single step of a Timeline
+	 */
+	public static class Step {
+
+		public enum Command {
+			SEND, PLAY, WAIT
+		}
+
+		private final long offset;
+		private final Command command;
+		private final String argument;
+		private final long duration;
+
+		Step(long offset, Command command, String argument, long duration) {
+			this.offset = offset;
+			this.command = command;
+			this.argument = argument;
+			this.duration = duration;
+		}
+
+		/**
+		 * @return milliseconds after the start of the scenario
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		public Command getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return the data of a send step, the resource of a play step or an empty string
+		 */
+		public String getArgument() {
+			return argument;
+		}
+
+		/**
+		 * @return length of the clip of a play step in milliseconds, 0 for other steps
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		@Override
+		public String toString() {
+			return offset + " " + command.name().toLowerCase() + (argument.isEmpty() ? "" : " " + argument);
+		}
+	}
+
+	private final String name;
+	private final List<Step> steps;
+
+	private Timeline(String name, List<Step> steps) {
+		this.name = name;
+		this.steps = Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * Reads a timeline from a resource. The lengths of the played clips are read from their resources.
+	 * @param resource name of the resource, e.g. "/scenarios/introduction.txt"
+	 * @return the timeline
+	 * @throws IOException if the resource can't be read or has an invalid format
+	 */
+	public static Timeline load(String resource) throws IOException {
+		InputStream in = Timeline.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IOException("Scenario " + resource + " not found");
+		}
+		try (Reader reader = new InputStreamReader(in, EmofaniClient.ASCII)) {
+			return parse(resource, reader, Timeline::getClipLength);
+		}
+	}
+
+	/**
+	 * Reads a timeline
+	 * @param name name of the timeline, used in error messages
+	 * @param reader contains the steps
+	 * @param clipLength returns the length of a clip in milliseconds, called for every play step
+	 * @return the timeline
+	 * @throws IOException if the steps can't be read or have an invalid format
+	 */
+	public static Timeline parse(String name, Reader reader, ToLongFunction<String> clipLength) throws IOException {
+		List<Step> steps = new ArrayList<Step>();
+		BufferedReader lines = new BufferedReader(reader);
+		long clipEnd = 0;
+		int number = 0;
+		String line;
+		while ((line = lines.readLine()) != null) {
+			number++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\\s+", 3);
+			try {
+				long offset = parseOffset(parts[0], clipEnd);
+				Step.Command command = Step.Command.valueOf(parts[1].toUpperCase());
+				String argument = (parts.length > 2) ? parts[2] : "";
+				if (argument.isEmpty() != (command == Step.Command.WAIT)) {
+					throw new IllegalArgumentException(command + " has an invalid argument");
+				}
+				long duration = 0;
+				if (command == Step.Command.PLAY) {
+					duration = clipLength.applyAsLong(argument);
+					clipEnd = offset + duration;
+				}
+				steps.add(new Step(offset, command, argument, duration));
+			} catch (RuntimeException e) {
+				throw new IOException(name + ", line " + number + ": invalid step \"" + line + "\"", e);
+			}
+		}
+
+		// a stable sort keeps the order of steps with the same offset
+		Collections.sort(steps, Comparator.comparingLong(Step::getOffset));
+		return new Timeline(name, steps);
+	}
+
+	/**
+	 * Reads the length of a sound file resource from its header
+	 */
+	private static long getClipLength(String resource) {
+		URL url = Timeline.class.getResource(resource);
+		if (url == null) {
+			throw new IllegalArgumentException(resource + " not found");
+		}
+		try {
+			AudioFileFormat format = AudioSystem.getAudioFileFormat(url);
+			return (long) (format.getFrameLength() * 1000L / format.getFormat().getFrameRate());
+		} catch (UnsupportedAudioFileException | IOException e) {
+			throw new IllegalArgumentException(resource + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static long parseOffset(String offset, long clipEnd) {
+		long value;
+		if (offset.equals("end")) {
+			value = clipEnd;
+		} else if (offset.startsWith("end+")) {
+			value = clipEnd + Long.parseLong(offset.substring(4));
+		} else {
+			value = Long.parseLong(offset);
+		}
+		if (value < 0) {
+			throw new IllegalArgumentException("negative offset " + offset);
+		}
+		return value;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the steps, sorted by offset
+	 */
+	public List<Step> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return milliseconds from the start of the scenario until the last step or clip has ended
+	 */
+	public long getLength() {
+		long length = 0;
+		for (Step step : steps) {
+			length = Math.max(length, step.getOffset() + step.getDuration());
+		}
+		return length;
+	}
+
+}
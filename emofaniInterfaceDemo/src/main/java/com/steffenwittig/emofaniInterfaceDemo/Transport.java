@@ -0,0 +1,67 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries the messages of an EmofaniClient to Emofani and its status messages back, see TransportType for the
+ * available implementations. Ids, timeouts and the matching of status messages are handled by the client.
+ */
+public interface Transport extends Closeable {
+
+	/**
+	 * Receives the status messages of a transport, called on the receiving thread of the transport
+	 */
+	interface Receiver {
+
+		/**
+		 * Called for every received status message
+		 * @param message a heap buffer with the message between position 0 and the limit. It is reused afterwards.
+		 */
+		void received(ByteBuffer message);
+
+		/**
+		 * Called if the connection broke. The transport is closed; it isn't called for close().
+		 * @param cause the reason
+		 */
+		void disconnected(IOException cause);
+	}
+
+	/**
+	 * Opens the transport and starts receiving
+	 * @param receiver receives the status messages
+	 * @throws IOException if the host can't be reached or resolved
+	 */
+	void open(Receiver receiver) throws IOException;
+
+	/**
+	 * @return true if messages can be sent
+	 */
+	boolean isOpen();
+
+	/**
+	 * Sends a message. Calls must not overlap.
+	 * @param message the message between position and limit
+	 * @return the number of bytes sent, including framing
+	 * @throws IOException if the message couldn't be sent
+	 */
+	int send(ByteBuffer message) throws IOException;
+
+	/**
+	 * @return the address Emofani should answer to (s)
+	 */
+	String getSourceAddress();
+
+	/**
+	 * @return the port Emofani should answer to (p)
+	 */
+	int getReceivePort();
+
+	/**
+	 * Closes the transport and ends its receiving thread
+	 */
+	@Override
+	void close();
+
+}
@@ -0,0 +1,47 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The ways an EmofaniClient can talk to Emofani
+ */
+public enum TransportType {
+
+	/** a datagram per message, status messages are sent to the input port (default) */
+	UDP,
+
+	/**
+	 * a persistent connection to the same port, every message is preceded by its length as a 4 byte integer and status
+	 * messages are sent back in order on the same connection
+	 */
+	TCP;
+
+	/**
+	 * Creates a transport of this type
+	 * @param host Name or address of the host where Emofani is running
+	 * @param port Port Emofani is listening on
+	 * @param receivePort Port for status messages, only used by UDP. 0 chooses a free port.
+	 * @return the transport, it still has to be opened
+	 */
+	public Transport create(String host, int port, int receivePort) {
+		return create(host, port, receivePort, ThreadMode.PLATFORM.newThreadFactory("emofani-receiver"));
+	}
+
+	/**
+	 * Creates a transport of this type
+	 * @param host Name or address of the host where Emofani is running
+	 * @param port Port Emofani is listening on
+	 * @param receivePort Port for status messages, only used by UDP. 0 chooses a free port.
+	 * @param threads creates the receiver thread
+	 * @return the transport, it still has to be opened
+	 */
+	public Transport create(String host, int port, int receivePort, ThreadFactory threads) {
+		switch (this) {
+		case TCP:
+			return new TcpTransport(host, port, threads);
+		default:
+			return new UdpTransport(host, port, receivePort, threads);
+		}
+	}
+
+}
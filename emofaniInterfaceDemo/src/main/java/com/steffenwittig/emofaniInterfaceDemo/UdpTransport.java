@@ -0,0 +1,161 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sends messages as datagrams through a channel connected to Emofani and receives status messages on a second channel
+ * bound to the input port, like Emofani expects it.
+ */
+public class UdpTransport implements Transport {
+
+	/** room for the answers to a full window of pipelined messages, the default drops some of them under load */
+	private static final int RECEIVE_BUFFER_SIZE = 1 << 20;
+
+	private final String host;
+	private final int sendPort, configuredReceivePort;
+	private final ThreadFactory threads;
+
+	private DatagramChannel sendChannel, receiveChannel;
+	private int receivePort = -1;
+	private String source;
+
+	/**
+	 * @param host Name or address of the host where Emofani is running
+	 * @param sendPort Port Emofani is listening on
+	 * @param receivePort Port where Emofani should send status messages to, 0 chooses a free port
+	 */
+	public UdpTransport(String host, int sendPort, int receivePort) {
+		this(host, sendPort, receivePort, ThreadMode.PLATFORM.newThreadFactory("emofani-receiver"));
+	}
+
+	/**
+	 * @param host Name or address of the host where Emofani is running
+	 * @param sendPort Port Emofani is listening on
+	 * @param receivePort Port where Emofani should send status messages to, 0 chooses a free port
+	 * @param threads creates the receiver thread
+	 */
+	public UdpTransport(String host, int sendPort, int receivePort, ThreadFactory threads) {
+		this.host = host;
+		this.sendPort = sendPort;
+		this.configuredReceivePort = receivePort;
+		this.threads = threads;
+	}
+
+	@Override
+	public synchronized void open(Receiver receiver) throws IOException {
+		close();
+		try {
+			InetSocketAddress target = new InetSocketAddress(InetAddress.getByName(host), sendPort);
+
+			sendChannel = DatagramChannel.open();
+			sendChannel.connect(target);
+
+			receiveChannel = DatagramChannel.open();
+			if (configuredReceivePort != 0) {
+				// with a free port, Linux could hand out a port another reusing channel is bound to
+				receiveChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			}
+			receiveChannel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+			receiveChannel.bind(new InetSocketAddress(configuredReceivePort));
+			receivePort = ((InetSocketAddress) receiveChannel.getLocalAddress()).getPort();
+
+			source = findSourceAddress();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+
+		final DatagramChannel channel = receiveChannel;
+		threads.newThread(() -> receive(channel, receiver)).start();
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return sendChannel != null && sendChannel.isOpen() && receiveChannel != null && receiveChannel.isOpen();
+	}
+
+	@Override
+	public int send(ByteBuffer message) throws IOException {
+		DatagramChannel channel;
+		synchronized (this) {
+			channel = sendChannel;
+		}
+		if (channel == null) {
+			throw new ClosedChannelException();
+		}
+		return channel.write(message);
+	}
+
+	@Override
+	public synchronized String getSourceAddress() {
+		return source;
+	}
+
+	@Override
+	public synchronized int getReceivePort() {
+		return isOpen() ? receivePort : configuredReceivePort;
+	}
+
+	@Override
+	public synchronized void close() {
+		closeQuietly(sendChannel);
+		closeQuietly(receiveChannel);
+		sendChannel = null;
+		receiveChannel = null;
+	}
+
+	/**
+	 * Receives datagrams until the channel is closed
+	 */
+	private static void receive(DatagramChannel channel, Receiver receiver) {
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		while (channel.isOpen()) {
+			try {
+				buffer.clear();
+				channel.receive(buffer);
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				// a single datagram failed, e.g. because of an ICMP port unreachable
+				continue;
+			}
+			buffer.flip();
+			receiver.received(buffer);
+		}
+	}
+
+	/**
+	 * Determines the address Emofani should send status messages to. This is the address of the local interface the
+	 * connected send channel uses to reach the target.
+	 */
+	private String findSourceAddress() {
+		try {
+			InetAddress local = ((InetSocketAddress) sendChannel.getLocalAddress()).getAddress();
+			if (local.isAnyLocalAddress()) {
+				local = InetAddress.getLocalHost();
+			}
+			return local.getHostAddress();
+		} catch (IOException e) {
+			return "localhost";
+		}
+	}
+
+	static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// nothing left to do
+			}
+		}
+	}
+
+}
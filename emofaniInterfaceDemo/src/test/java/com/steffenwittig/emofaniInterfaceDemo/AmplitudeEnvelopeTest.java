@@ -0,0 +1,136 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Computes envelopes of generated sounds: half a second of silence followed by half a second of a 400 Hz tone, so
+ * every 10 ms window at 8000 Hz holds whole periods of the tone.
+ */
+public class AmplitudeEnvelopeTest extends TestCase {
+
+	private static final float RATE = 8000;
+
+	/**
+	 * @param amplitude of the tone, 0 to 1 of full scale
+	 */
+	private static AudioInputStream sound(AudioFormat format, double amplitude) {
+		int bytes = format.getSampleSizeInBits() / 8;
+		int frames = (int) RATE;
+		byte[] data = new byte[frames * format.getFrameSize()];
+		for (int frame = frames / 2; frame < frames; frame++) {
+			double value = amplitude * Math.sin(2 * Math.PI * 400 * frame / RATE);
+			for (int channel = 0; channel < format.getChannels(); channel++) {
+				int offset = frame * format.getFrameSize() + channel * bytes;
+				if (bytes == 1) {
+					data[offset] = (byte) (Math.round(value * 127) + 128);
+				} else {
+					int sample = (int) Math.round(value * 32767);
+					data[offset + (format.isBigEndian() ? 0 : 1)] = (byte) (sample >> 8);
+					data[offset + (format.isBigEndian() ? 1 : 0)] = (byte) sample;
+				}
+			}
+		}
+		for (int offset = 0; bytes == 1 && offset < frames / 2 * format.getFrameSize(); offset++) {
+			data[offset] = (byte) 128;
+		}
+		return new AudioInputStream(new ByteArrayInputStream(data), format, frames);
+	}
+
+	public void testSilenceAndTone() throws IOException {
+		AmplitudeEnvelope envelope = AmplitudeEnvelope.analyze(
+				sound(new AudioFormat(RATE, 16, 1, true, false), 0.5), AmplitudeEnvelope.DEFAULT_WINDOW_MILLIS);
+
+		assertEquals(100, envelope.getWindowCount());
+		assertEquals(80, envelope.getFramesPerWindow());
+		assertEquals(0f, envelope.getLevel(10));
+		assertEquals(0.5 / Math.sqrt(2), envelope.getLevel(60), 0.001);
+		assertEquals(0, envelope.getMouth(100));
+		assertEquals(100, envelope.getMouth(6000));
+		assertEquals(0, envelope.getMouth(8000));
+		assertEquals(400, envelope.toFrame(50));
+	}
+
+	/**
+	 * 8 bit unsigned stereo and 16 bit big endian give the same levels
+	 */
+	public void testFormats() throws IOException {
+		AmplitudeEnvelope unsigned = AmplitudeEnvelope.analyze(
+				sound(new AudioFormat(RATE, 8, 2, false, false), 0.5), AmplitudeEnvelope.DEFAULT_WINDOW_MILLIS);
+		AmplitudeEnvelope bigEndian = AmplitudeEnvelope.analyze(
+				sound(new AudioFormat(RATE, 16, 1, true, true), 0.5), AmplitudeEnvelope.DEFAULT_WINDOW_MILLIS);
+
+		assertEquals(100, unsigned.getWindowCount());
+		assertEquals(0f, unsigned.getLevel(10));
+		assertEquals(0.5 / Math.sqrt(2), unsigned.getLevel(60), 0.01);
+		assertEquals(0.5 / Math.sqrt(2), bigEndian.getLevel(60), 0.001);
+	}
+
+	/**
+	 * A sound file of the scenarios is read from its resource, the last window may be shorter
+	 */
+	public void testResource() throws IOException {
+		AmplitudeEnvelope envelope = AmplitudeEnvelope.analyze("/message_hello.wav", 20);
+
+		assertTrue(envelope.getWindowCount() > 10);
+		assertTrue(envelope.getPeak() > 0);
+		int open = 0;
+		for (int i = 0; i < envelope.getWindowCount(); i++) {
+			int mouth = envelope.getMouth((long) i * envelope.getFramesPerWindow());
+			assertTrue(mouth >= 0 && mouth <= 100);
+			open = Math.max(open, mouth);
+		}
+		assertEquals(100, open);
+
+		try {
+			AmplitudeEnvelope.analyze("/missing.wav", 20);
+			fail("analyzed a missing resource");
+		} catch (IOException e) {
+			assertEquals("/missing.wav not found", e.getMessage());
+		}
+	}
+
+	/**
+	 * The mouth openness is streamed at the current frame position until the stream is stopped
+	 */
+	public void testLipSync() throws Exception {
+		List<String> sent = new CopyOnWriteArrayList<String>();
+		LipSync lipSync = new LipSync(sent::add, 100, null);
+		AmplitudeEnvelope envelope = lipSync.getEnvelope("/message_hello.wav").get();
+		AtomicLong frame = new AtomicLong(envelope.getWindowCount() * (long) envelope.getFramesPerWindow());
+
+		// after the end of the sound the mouth is closed, and the value is only sent once
+		lipSync.start("/message_hello.wav", frame::get);
+		Thread.sleep(100);
+		assertEquals("[mouth=0]", sent.toString());
+
+		// the loudest window, read ahead of the frame position
+		long loudest = 0;
+		for (long f = 0; envelope.getMouth(f) < 100; f += envelope.getFramesPerWindow()) {
+			loudest = f + envelope.getFramesPerWindow();
+		}
+		frame.set(loudest - envelope.toFrame(LipSync.LOOKAHEAD_MILLIS));
+		for (int i = 0; i < 50 && sent.size() < 2; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("[mouth=0, mouth=100]", sent.toString());
+		assertTrue(lipSync.isStreaming());
+
+		lipSync.stop();
+		int count = sent.size();
+		frame.set(0);
+		Thread.sleep(50);
+		assertEquals(count, sent.size());
+		assertFalse(lipSync.isStreaming());
+		assertSame(envelope, lipSync.getEnvelope("/message_hello.wav").get());
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for BinaryProtocol.
+ */
+public class BinaryProtocolTest extends TestCase {
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(MessageEncoder.CAPACITY);
+
+	public void testEncodeMessage() {
+		assertTrue(BinaryProtocol.encodeMessage(buffer, 1424766709104L, 11001, "expression=happy%50,gazex=-80"));
+
+		assertEquals(BinaryProtocol.MESSAGE_HEADER_LENGTH + 2 * BinaryProtocol.PARAMETER_LENGTH, buffer.remaining());
+		assertTrue(BinaryProtocol.isBinary(buffer));
+		assertEquals(1424766709104L, buffer.getLong(2));
+		assertEquals(11001, buffer.getShort(10) & 0xffff);
+		assertEquals(2, buffer.get(12));
+		assertEquals("happy", BinaryProtocol.getExpressionName(buffer.get(13)));
+		assertEquals(50 * BinaryProtocol.ONE, buffer.getInt(14));
+		assertEquals("gazex", BinaryProtocol.getParameterName(buffer.get(18)));
+		assertEquals(-80 * BinaryProtocol.ONE, buffer.getInt(19));
+	}
+
+	public void testDataThatCantBeEncoded() {
+		assertFalse(BinaryProtocol.encodeMessage(buffer, 1, 11001, "blush=abc"));
+		assertFalse(BinaryProtocol.encodeMessage(buffer, 1, 11001, "unknown=1"));
+		assertFalse(BinaryProtocol.encodeMessage(buffer, 1, 11001, "expression=grumpy%50"));
+		assertFalse(BinaryProtocol.encodeMessage(buffer, 1, 11001, "gazex=130,"));
+		assertFalse(BinaryProtocol.encodeMessage(buffer, 1, 11001, "gazex=100000"));
+		assertFalse(BinaryProtocol.encodeMessage(buffer, 1, 11001, BinaryProtocol.HANDSHAKE));
+	}
+
+	public void testStatus() {
+		FaceState state = new FaceState();
+		BinaryProtocol.encodeOk(buffer, 7, -71, 36, 20, 130, -80, 250, true, false);
+		assertEquals(BinaryProtocol.OK_STATUS_LENGTH, buffer.remaining());
+		assertTrue(BinaryProtocol.decodeStatus(buffer, state));
+		assertTrue(state.isOk());
+		assertEquals(7, state.getId());
+		assertEquals(-71, state.getArousal());
+		assertEquals(250, state.getGazeZ());
+		assertTrue(state.isTalking());
+		assertFalse(state.isIdle());
+		assertEquals(0, state.getMissingFields(FaceState.OK_FIELDS));
+		assertEquals("status:OK;t:7;arousal:-71;pleasure:36;blush:20;gazex:130;gazey:-80;gazez:250;talking:true;"
+				+ "idle:false", BinaryProtocol.toText(state));
+
+		BinaryProtocol.encodeError(buffer, FaceStatus.NO_ID, "Unknown parameter id 99");
+		assertTrue(BinaryProtocol.decodeStatus(buffer, state));
+		assertFalse(state.isOk());
+		assertFalse(state.has(FaceState.ID));
+		assertEquals("Unknown parameter id 99", state.getError());
+
+		buffer.limit(10);
+		assertFalse(BinaryProtocol.decodeStatus(buffer, state));
+	}
+
+}
@@ -0,0 +1,332 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs an EmofaniServer and an EmofaniClient on the loopback interface.
+ */
+public class EmofaniServerTest extends TestCase {
+
+	private EmofaniServer server;
+	private EmofaniClient client;
+	private ClientMetrics metrics;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new EmofaniServer(0).start();
+		metrics = new ClientMetrics();
+		client = clientOf(server.getPort()).metrics(metrics).build();
+		client.open();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+
+	/**
+	 * @param port the port of the server or the fake face
+	 * @return a builder for a client on the loopback interface, that receives on a free port and times out after a
+	 *         second
+	 */
+	private static EmofaniClient.Builder clientOf(int port) {
+		return EmofaniClient.builder().host("127.0.0.1").sendPort(port).receivePort(0).timeout(1000);
+	}
+
+	public void testExpression() {
+		FaceStatus status = client.send("expression", "happy%50");
+
+		assertTrue(status.isOk());
+		assertEquals(6, status.getArousal());
+		assertEquals(42, status.getPleasure());
+		assertEquals(250, status.getGazeZ());
+		assertFalse(status.isIdle());
+		assertEquals(0, status.getMissingFields(FaceState.OK_FIELDS));
+		assertEquals(42, server.getPleasure());
+	}
+
+	public void testBatchIsAppliedAtOnce() {
+		assertTrue(client.batch().set("gazex", 130).set("talking", "True").send().isOk());
+		assertEquals(130, server.getGazeX());
+		assertTrue(server.isTalking());
+
+		FaceStatus status = client.await(client.sendData("gazex=-80,blush=abc"));
+		assertFalse(status.isOk());
+		assertTrue(status.getError(), status.getError().contains("blush"));
+		assertEquals(130, server.getGazeX());
+		assertEquals(1, server.getErrorCount());
+	}
+
+	/**
+	 * The mouth openness is checked and only kept while talking
+	 */
+	public void testMouth() {
+		assertTrue(client.batch().set("talking", "true").set("mouth", 40).send().isOk());
+		assertEquals(40, server.getMouth());
+
+		FaceStatus status = client.send("mouth", "150");
+		assertFalse(status.isOk());
+		assertTrue(status.getError(), status.getError().contains("mouth"));
+		assertEquals(40, server.getMouth());
+
+		assertTrue(client.send("talking", "false").isOk());
+		assertEquals(-1, server.getMouth());
+	}
+
+	public void testMetrics() throws InterruptedException {
+		client.batch().set("gazex", 10).set("gazey", 20).send();
+		client.send("expression", "sad%100");
+		client.await(client.sendData("nose=long"));
+
+		// the metrics are updated by the receiver thread after the waiting thread has been woken up
+		for (int i = 0; i < 100 && metrics.getInFlight() > 0; i++) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(3, metrics.getMessagesSent());
+		assertEquals(Long.valueOf(1), metrics.getSendCounts().get("gazex"));
+		assertEquals(Long.valueOf(1), metrics.getSendCounts().get("expression"));
+		assertEquals(Long.valueOf(1), metrics.getSendCounts().get("other"));
+		assertEquals(1, metrics.getErrorAnswers());
+		assertEquals(0, metrics.getTimeouts());
+		assertEquals(0, metrics.getInFlight());
+		assertEquals(3, metrics.getRoundTripSamples());
+		assertTrue(metrics.getRoundTripMinMillis() > 0);
+		assertTrue(metrics.getRoundTripP99Millis() >= metrics.getRoundTripMeanMillis());
+		assertTrue(metrics.getBytesSent() > 0);
+		assertTrue(metrics.getBytesReceived() > 0);
+	}
+
+	public void testOutOfOrderMessageIsDropped() throws Exception {
+		try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+			socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+			socket.setSoTimeout(1000);
+			int port = socket.getLocalPort();
+
+			assertEquals("status:OK;t:20;arousal:0;pleasure:0;blush:0;gazex:10;gazey:0;gazez:250;talking:false;"
+					+ "idle:false", exchange(socket, "t:20;s:127.0.0.1;p:" + port + ";d:gazex=10"));
+			assertEquals("status:ERROR;t:10;error:\"Dropped because t is smaller than previous timestamp. \"",
+					exchange(socket, "t:10;s:127.0.0.1;p:" + port + ";d:gazex=20"));
+			assertEquals(10, server.getGazeX());
+			assertEquals(1, server.getDroppedCount());
+		}
+	}
+
+	/**
+	 * Sends messages without waiting for the previous answer and checks that every one of them is answered with OK.
+	 */
+	public void testPipelinedThroughput() throws Exception {
+		int count = 20000, window = 256;
+		Semaphore inFlight = new Semaphore(window);
+		AtomicLong ok = new AtomicLong();
+
+		for (int i = 0; i < count; i++) {
+			inFlight.acquire();
+			client.sendData("gazex=" + (i % 300)).whenComplete((status, error) -> {
+				if (error == null && status.isOk()) {
+					ok.incrementAndGet();
+				}
+				inFlight.release();
+			});
+		}
+		assertTrue(inFlight.tryAcquire(window, 10, TimeUnit.SECONDS));
+
+		assertEquals(count, ok.get());
+		assertEquals(count, server.getOkCount());
+	}
+
+	/**
+	 * The handshake switches to the binary format, data that can't be encoded is still sent as text
+	 */
+	public void testBinary() throws Exception {
+		try (EmofaniClient binary = clientOf(server.getPort()).binary(true).build()) {
+			FaceStatus status = binary.batch().set("expression", "happy%50").set("talking", "true").send();
+			assertTrue(binary.isBinary());
+			assertTrue(status.isOk());
+			assertEquals(6, status.getArousal());
+			assertEquals(42, status.getPleasure());
+			assertTrue(status.isTalking());
+			assertEquals(1, server.getBinaryCount());
+
+			status = binary.send("blush", "abc");
+			assertFalse(status.isOk());
+			assertTrue(status.getError(), status.getError().contains("blush"));
+			assertEquals(1, server.getBinaryCount());
+		}
+	}
+
+	/**
+	 * Pipelines messages over a TCP connection, which answers them in order
+	 */
+	public void testTcpPipelined() throws Exception {
+		try (EmofaniClient tcp = clientOf(server.getTcpPort()).transport(TransportType.TCP).build()) {
+			List<CompletableFuture<FaceStatus>> futures = new ArrayList<CompletableFuture<FaceStatus>>();
+			for (int i = 0; i < 1000; i++) {
+				futures.add(tcp.sendData("gazex=" + i));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				FaceStatus status = futures.get(i).get(5, TimeUnit.SECONDS);
+				assertTrue(status.isOk());
+				assertEquals(i, status.getGazeX());
+			}
+			assertEquals(999, server.getGazeX());
+		}
+	}
+
+	/**
+	 * A broken connection fails the pending messages and the next message connects again
+	 */
+	public void testTcpReconnects() throws Exception {
+		int port = server.getTcpPort();
+		EmofaniClient tcp = clientOf(port).transport(TransportType.TCP).timeout(0).build();
+		try {
+			assertTrue(tcp.send("blush", "20").isOk());
+			server.close();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (tcp.isOpen() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertFalse(tcp.isOpen());
+
+			server = new EmofaniServer(port).start();
+			FaceStatus status = tcp.send("blush", "30");
+			assertTrue(status.isOk());
+			assertEquals(30, status.getBlush());
+		} finally {
+			tcp.close();
+		}
+	}
+
+	/**
+	 * Answers and status messages nobody waits for reach every listener on the executor, also if another listener
+	 * fails
+	 */
+	public void testStatusListeners() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "listeners"));
+		BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+		try (EmofaniClient listened = clientOf(server.getPort()).listenerExecutor(executor).statusListener(status -> {
+					throw new IllegalStateException("broken listener");
+				}).build();
+				DatagramSocket face = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+			listened.addStatusListener(
+					status -> received.add(Thread.currentThread().getName() + " " + status.getGazeX()));
+			assertTrue(listened.send("gazex", "130").isOk());
+
+			String idle = "status:OK;arousal:0;pleasure:0;blush:0;gazex:-80;gazey:0;gazez:250;talking:false;idle:true";
+			face.send(new DatagramPacket(idle.getBytes(StandardCharsets.US_ASCII), idle.length(),
+					new InetSocketAddress("127.0.0.1", listened.getReceivePort())));
+
+			assertEquals("listeners 130", received.poll(2, TimeUnit.SECONDS));
+			assertEquals("listeners -80", received.poll(2, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * With the cache, unchanged parameters aren't sent again until resync()
+	 */
+	public void testCache() throws Exception {
+		try (EmofaniClient cached = clientOf(server.getPort()).cache(true).metrics(metrics).build()) {
+			assertTrue(cached.send("expression", "happy%50").isOk());
+			FaceStatus status = cached.send("expression", "happy%50");
+			assertTrue(status.isOk());
+			assertEquals(42, status.getPleasure());
+			assertEquals(1, server.getOkCount());
+			assertEquals(1, metrics.getSuppressed());
+
+			assertTrue(cached.batch().set("expression", "happy%50").set("gazex", 130).send().isOk());
+			assertEquals(2, server.getOkCount());
+			assertEquals(130, server.getGazeX());
+
+			cached.resync();
+			assertTrue(cached.send("gazex", "130").isOk());
+			assertEquals(3, server.getOkCount());
+		}
+	}
+
+	/**
+	 * A face that ignores the first message gets it again with a newer id, and a message whose parameter was sent
+	 * again with a newer value isn't retransmitted
+	 */
+	public void testRetransmission() throws Exception {
+		try (DatagramSocket face = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+				EmofaniClient retrying = clientOf(face.getLocalPort()).timeout(100).retries(2).metrics(metrics).build()) {
+			face.setSoTimeout(2000);
+
+			CompletableFuture<FaceStatus> future = retrying.sendData("gazex=10,gazey=20");
+			String first = receive(face);
+			String second = receive(face);
+			assertTrue(second, second.endsWith(";d:gazex=10,gazey=20"));
+			assertTrue(id(second) > id(first));
+
+			String answer = "status:OK;t:" + id(second) + ";arousal:0;pleasure:0;blush:0;gazex:10;gazey:20;gazez:250;"
+					+ "talking:false;idle:false";
+			face.send(new DatagramPacket(answer.getBytes(StandardCharsets.US_ASCII), answer.length(),
+					new InetSocketAddress("127.0.0.1", retrying.getReceivePort())));
+			assertEquals(20, future.get(2, TimeUnit.SECONDS).getGazeY());
+
+			// gazex is superseded before the retry, only gazey is sent again
+			CompletableFuture<FaceStatus> older = retrying.sendData("gazex=30,gazey=40");
+			CompletableFuture<FaceStatus> newer = retrying.sendData("gazex=50");
+			receive(face);
+			receive(face);
+			String retries = receive(face) + "|" + receive(face);
+			assertTrue(retries, retries.contains(";d:gazey=40") && retries.contains(";d:gazex=50"));
+
+			// a message whose only parameter has a newer value is given up
+			CompletableFuture<FaceStatus> superseded = retrying.sendData("blush=10");
+			retrying.sendData("blush=20");
+			try {
+				superseded.get(2, TimeUnit.SECONDS);
+				fail("superseded message completed");
+			} catch (CancellationException | ExecutionException e) {
+				// expected
+			}
+			for (int i = 0; i < 100 && metrics.getAbandoned() == 0; i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(metrics.getRetransmits() >= 3);
+			assertEquals(1, metrics.getAbandoned());
+			older.cancel(false);
+			newer.cancel(false);
+		}
+	}
+
+	private static String receive(DatagramSocket socket) throws Exception {
+		DatagramPacket message = new DatagramPacket(new byte[MessageEncoder.CAPACITY], MessageEncoder.CAPACITY);
+		socket.receive(message);
+		return new String(message.getData(), 0, message.getLength(), StandardCharsets.US_ASCII);
+	}
+
+	private static long id(String message) {
+		return Long.parseLong(message.substring(2, message.indexOf(';')));
+	}
+
+	private static String exchange(DatagramSocket socket, String message) throws Exception {
+		byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+		socket.send(new DatagramPacket(bytes, bytes.length));
+		DatagramPacket answer = new DatagramPacket(new byte[MessageEncoder.CAPACITY], MessageEncoder.CAPACITY);
+		socket.receive(answer);
+		return new String(answer.getData(), 0, answer.getLength(), StandardCharsets.US_ASCII);
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for GazeTracker and AlphaBetaFilter.
+ */
+public class GazeTrackerTest extends TestCase {
+
+	public void testFilterPredictsConstantVelocity() {
+		AlphaBetaFilter filter = new AlphaBetaFilter(0.5, 0.1);
+		long second = TimeUnit.SECONDS.toNanos(1);
+		for (int i = 0; i <= 100; i++) {
+			// 10 units per second
+			filter.update(i / 10.0, i * second / 100);
+		}
+		assertEquals(10, filter.predict(second), 0.1);
+		assertEquals(11, filter.predict(second + second / 10), 0.2);
+	}
+
+	public void testDeadband() {
+		GazeTracker tracker = new GazeTracker(EmofaniClient.builder().build(), 1, 0, 3, 0);
+		assertNull(tracker.tick(System.nanoTime()));
+
+		assertTrue(tracker.offer("130 -80"));
+		assertEquals("gazex=130,gazey=-80", tracker.tick(System.nanoTime()));
+		assertNull(tracker.tick(System.nanoTime()));
+
+		tracker.offer(131, -70, Double.NaN);
+		assertEquals("gazey=-70", tracker.tick(System.nanoTime()));
+
+		assertTrue(tracker.offer("131,-70,250"));
+		assertEquals("gazez=250", tracker.tick(System.nanoTime()));
+
+		assertFalse(tracker.offer("left"));
+		assertEquals(1, tracker.getMalformedCount());
+	}
+
+}
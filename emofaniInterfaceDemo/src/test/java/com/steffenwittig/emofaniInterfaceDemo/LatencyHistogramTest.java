@@ -0,0 +1,45 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LatencyHistogram.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 100000; i++) {
+			histogram.record(i * 1000);
+		}
+
+		assertEquals(100000, histogram.getCount());
+		assertEquals(1000, histogram.getMin());
+		assertEquals(100000000, histogram.getMax());
+		assertEquals(50000500, histogram.getMean(), 1);
+		assertEquals(50000000, histogram.getValueAtPercentile(50), 50000000 / 100);
+		assertEquals(99000000, histogram.getValueAtPercentile(99), 99000000 / 100);
+		assertEquals(99900000, histogram.getValueAtPercentile(99.9), 99900000 / 100);
+		assertEquals(100000000, histogram.getValueAtPercentile(100));
+	}
+
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 200; i++) {
+			histogram.record(i);
+		}
+		assertEquals(99, histogram.getValueAtPercentile(50));
+		assertEquals(0, histogram.getValueAtPercentile(0));
+	}
+
+	public void testEmptyAndReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(99));
+		histogram.record(Long.MAX_VALUE);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+	}
+
+}
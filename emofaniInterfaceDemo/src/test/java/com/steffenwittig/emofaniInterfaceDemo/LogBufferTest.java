@@ -0,0 +1,48 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LogBuffer.
+ */
+public class LogBufferTest extends TestCase {
+
+	public void testOldestLinesAreOverwritten() {
+		LogBuffer buffer = new LogBuffer(3);
+		buffer.print(MessageLog.Direction.OUT, "Out: 1");
+		buffer.print(MessageLog.Direction.IN, "In: 1");
+		buffer.print("Timeout");
+		buffer.print(MessageLog.Direction.OUT, "Out: 2");
+
+		List<LogBuffer.Entry> entries = new ArrayList<LogBuffer.Entry>();
+		assertEquals(4, buffer.copyTo(entries));
+		assertEquals("[In: 1, Timeout, Out: 2]", entries.toString());
+		assertEquals(MessageLog.Direction.IN, entries.get(0).getDirection());
+		assertEquals(MessageLog.Direction.INFO, entries.get(1).getDirection());
+		assertEquals(3, buffer.size());
+
+		buffer.clear();
+		assertEquals(0, buffer.copyTo(entries));
+		assertTrue(entries.isEmpty());
+	}
+
+	public void testModelFilters() {
+		LogBuffer buffer = new LogBuffer(10);
+		LogListModel model = new LogListModel(buffer);
+		buffer.print(MessageLog.Direction.OUT, "Out: \"d:gazex=10\"");
+		buffer.print(MessageLog.Direction.OUT, "Out: \"d:blush=10\"");
+		buffer.print(MessageLog.Direction.IN, "In: \"status:OK;gazex:10\"");
+		model.refresh();
+		assertEquals(3, model.getSize());
+
+		model.setFilter("GazeX");
+		assertEquals(2, model.getSize());
+		model.setDirection(MessageLog.Direction.IN);
+		assertEquals(1, model.getSize());
+		assertEquals(MessageLog.Direction.IN, model.getElementAt(0).getDirection());
+	}
+
+}
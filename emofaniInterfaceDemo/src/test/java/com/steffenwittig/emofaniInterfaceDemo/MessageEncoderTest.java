@@ -0,0 +1,185 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for MessageEncoder.
+ */
+public class MessageEncoderTest extends TestCase {
+
+	public void testSingleParameter() throws IOException {
+		MessageEncoder encoder = new MessageEncoder();
+		encoder.setHeader("192.168.2.145", 11001);
+		encoder.begin(1424766709104L).append("expression", "happy%77").finish();
+		assertEquals("t:1424766709104;s:192.168.2.145;p:11001;d:expression=happy%77", encoder.toString());
+	}
+
+	public void testNumbersAndBatches() throws IOException {
+		MessageEncoder encoder = new MessageEncoder();
+		encoder.setHeader("127.0.0.1", 11001);
+		encoder.begin(0).append("gazex", 130).append("gazey", -80).append("gazez", 0).finish();
+		assertEquals("t:0;s:127.0.0.1;p:11001;d:gazex=130,gazey=-80,gazez=0", encoder.toString());
+
+		encoder.begin(Long.MAX_VALUE).append("a", Long.MIN_VALUE).appendData("b=1,c=2").finish();
+		assertEquals("t:" + Long.MAX_VALUE + ";s:127.0.0.1;p:11001;d:a=" + Long.MIN_VALUE + ",b=1,c=2",
+				encoder.toString());
+	}
+
+	public void testHeaderChanges() throws IOException {
+		MessageEncoder encoder = new MessageEncoder();
+		encoder.setHeader("127.0.0.1", 11001);
+		encoder.setHeader("10.0.0.2", 12000);
+		ByteBuffer message = encoder.begin(7).append("talking", "true").finish();
+		assertEquals("t:7;s:10.0.0.2;p:12000;d:talking=true", encoder.toString());
+		assertEquals(0, message.position());
+		assertEquals(encoder.toString().length(), message.remaining());
+	}
+
+	public void testNonAsciiIsRejected() throws IOException {
+		MessageEncoder encoder = new MessageEncoder();
+		encoder.setHeader("127.0.0.1", 11001);
+		try {
+			encoder.begin(1).appendData("expression=fr\u00f6hlich%50");
+			fail("encoded a non-ASCII character");
+		} catch (CharConversionException e) {
+			assertEquals("'\u00f6' is not an ASCII character", e.getMessage());
+		}
+	}
+
+	public void testOversizeDataIsRejected() throws IOException {
+		StringBuilder data = new StringBuilder("gazex=1");
+		while (data.length() < MessageEncoder.CAPACITY) {
+			data.append(",gazex=1");
+		}
+		MessageEncoder encoder = new MessageEncoder();
+		encoder.setHeader("127.0.0.1", 11001);
+		try {
+			encoder.begin(1).appendData(data);
+			fail("encoded more than CAPACITY bytes");
+		} catch (IOException e) {
+			assertEquals("The message is longer than " + MessageEncoder.CAPACITY + " bytes", e.getMessage());
+		}
+		try {
+			encoder.begin(1).appendData(data.substring(0, MessageEncoder.CAPACITY - 40)).append("gazey", Long.MIN_VALUE);
+			fail("encoded more than CAPACITY bytes");
+		} catch (IOException e) {
+			assertFalse(e instanceof CharConversionException);
+		}
+	}
+
+	/**
+	 * sendData() fails the future of data it can't encode instead of throwing
+	 */
+	public void testClientRejectsData() throws Exception {
+		DatagramChannel sink = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		try (EmofaniClient client = EmofaniClient.builder().host("127.0.0.1")
+				.sendPort(((InetSocketAddress) sink.getLocalAddress()).getPort()).receivePort(0).timeout(0).build()) {
+			CompletableFuture<FaceStatus> future = client.sendData("expression=fr\u00f6hlich%50");
+			assertTrue(future.isCompletedExceptionally());
+			try {
+				future.get();
+				fail("sent a non-ASCII character");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof CharConversionException);
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Encoding and writing a message to a connected channel must not allocate once the header has been built. This
+	 * covers the encoder and the channel only, see testClientSendAllocations() for EmofaniClient.sendData().
+	 */
+	public void testEncoderDoesNotAllocate() throws Exception {
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+		if (threads == null) {
+			return;
+		}
+
+		DatagramChannel sink = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		DatagramChannel channel = DatagramChannel.open();
+		try {
+			channel.connect(sink.getLocalAddress());
+			MessageEncoder encoder = new MessageEncoder();
+			encoder.setHeader("127.0.0.1", 11001);
+
+			// warm up, e.g. for lazily created channel internals
+			int count = 10000;
+			sendGaze(encoder, channel, count);
+
+			long thread = Thread.currentThread().getId();
+			long before = threads.getThreadAllocatedBytes(thread);
+			sendGaze(encoder, channel, count);
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+			// a single object per message would take at least 16 bytes. What's left is noise of the JVM itself, e.g.
+			// from the JIT compiler.
+			assertTrue("send path allocated " + allocated + " bytes", allocated < count);
+		} finally {
+			channel.close();
+			sink.close();
+		}
+	}
+
+	/**
+	 * EmofaniClient.sendData() allocates a few small objects per message even without a log, metrics or a timeout:
+	 * the returned CompletableFuture and the entry in the map of pending messages. The message itself isn't copied.
+	 */
+	public void testClientSendAllocations() throws Exception {
+		com.sun.management.ThreadMXBean threads = allocationCounter();
+		if (threads == null) {
+			return;
+		}
+
+		DatagramChannel sink = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+		try (EmofaniClient client = EmofaniClient.builder().host("127.0.0.1")
+				.sendPort(((InetSocketAddress) sink.getLocalAddress()).getPort()).receivePort(0).timeout(0).build()) {
+			client.open();
+			int count = 10000;
+			for (int i = 0; i < count; i++) {
+				client.sendData("gazex=130,gazey=-80");
+			}
+
+			long thread = Thread.currentThread().getId();
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < count; i++) {
+				client.sendData("gazex=130,gazey=-80");
+			}
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+			assertTrue("sendData allocated " + allocated / count + " bytes per message", allocated < 256L * count);
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * @return the thread bean with allocation counting enabled, null if the JVM can't count allocations
+	 */
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		return threads;
+	}
+
+	private static void sendGaze(MessageEncoder encoder, DatagramChannel channel, int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			channel.write(encoder.begin(i).append("gazex", i % 400 - 200).append("gazey", -i % 200).finish());
+		}
+	}
+
+}
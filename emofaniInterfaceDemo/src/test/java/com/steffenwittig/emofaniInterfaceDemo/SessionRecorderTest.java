@@ -0,0 +1,92 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import junit.framework.TestCase;
+
+/**
+ * Records sessions to a temporary file and reads and replays them.
+ */
+public class SessionRecorderTest extends TestCase {
+
+	private static final FaceStatus OK = FaceStatus.parse("status:OK;t:1");
+
+	private Path path;
+
+	@Override
+	protected void setUp() throws IOException {
+		path = File.createTempFile("session", ".emofani").toPath();
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * Enough records to fill several mapped regions are read back in order, and the file is cut to their length
+	 */
+	public void testRecordsSpanRegions() throws IOException {
+		int count = 20000;
+		try (SessionRecorder recorder = new SessionRecorder(path, 1 << 16)) {
+			for (int i = 0; i < count; i++) {
+				recorder.append((i % 2 == 0) ? MessageLog.Direction.OUT : MessageLog.Direction.IN, i, "gazex=" + i);
+			}
+			assertEquals(count, recorder.getRecordCount());
+		}
+
+		try (SessionReplayer.Reader reader = new SessionReplayer(path).open()) {
+			assertTrue(reader.getStartMillis() > 0);
+			for (int i = 0; i < count; i++) {
+				SessionReplayer.Record record = reader.next();
+				assertEquals((i % 2 == 0) ? MessageLog.Direction.OUT : MessageLog.Direction.IN, record.getDirection());
+				assertEquals(i, record.getNanos());
+				assertEquals("gazex=" + i, record.getText());
+			}
+			assertNull(reader.next());
+		}
+		assertTrue(Files.size(path) < 2 * count * (SessionRecorder.RECORD_HEADER_LENGTH + 11));
+	}
+
+	/**
+	 * Only the sent messages are replayed, with the recorded gaps divided by the speed
+	 */
+	public void testReplay() throws Exception {
+		try (SessionRecorder recorder = new SessionRecorder(path)) {
+			recorder.append(MessageLog.Direction.OUT, 0, "expression=happy%50");
+			recorder.append(MessageLog.Direction.IN, 1000000, "status:OK;t:1");
+			recorder.append(MessageLog.Direction.OUT, 500000000, "gazex=130,gazey=-80");
+		}
+
+		SessionReplayer replayer = new SessionReplayer(path);
+		List<String> sent = new ArrayList<String>();
+		long start = System.nanoTime();
+		assertEquals(2, replayer.replay(data -> {
+			sent.add(data);
+			return CompletableFuture.completedFuture(OK);
+		}, 10, 1));
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals("[expression=happy%50, gazex=130,gazey=-80]", sent.toString());
+		assertEquals(2, replayer.getOkCount());
+		assertTrue(elapsed >= 50000000);
+		assertTrue(elapsed < 400000000);
+	}
+
+	public void testNotASession() throws IOException {
+		Files.write(path, "gazex=10\n".getBytes(EmofaniClient.ASCII));
+		try {
+			new SessionReplayer(path).open();
+			fail("opened a text file");
+		} catch (IOException e) {
+			assertEquals("Not a recorded session", e.getMessage());
+		}
+	}
+
+}
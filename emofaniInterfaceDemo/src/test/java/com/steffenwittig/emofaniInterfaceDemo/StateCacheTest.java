@@ -0,0 +1,69 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import junit.framework.TestCase;
+
+/**
+ * Feeds status messages into a StateCache and checks which parameters it leaves out.
+ */
+public class StateCacheTest extends TestCase {
+
+	private final StateCache cache = new StateCache();
+
+	private static FaceStatus status(long id, int arousal, int pleasure, int gazex) {
+		return FaceStatus.parse("status:OK;t:" + id + ";arousal:" + arousal + ";pleasure:" + pleasure
+				+ ";blush:0;gazex:" + gazex + ";gazey:0;gazez:250;talking:false;idle:false");
+	}
+
+	public void testNothingIsLeftOutBeforeTheFirstStatus() {
+		assertEquals("gazex=0", cache.delta("gazex=0"));
+	}
+
+	public void testAcknowledgedValuesAreLeftOut() {
+		cache.sent(1, "gazex=130,talking=True,action=nod");
+		cache.acknowledged(1, "gazex=130,talking=True,action=nod", status(1, 0, 0, 130));
+
+		assertNull(cache.delta("gazex=130"));
+		assertNull(cache.delta("talking=true"));
+		assertEquals("action=nod", cache.delta("gazex=130,action=nod"));
+		assertEquals("gazey=10", cache.delta("gazex=130,gazey=10"));
+		// reported by the status without having been sent
+		assertNull(cache.delta("gazez=250"));
+	}
+
+	public void testValuesOnTheWayAreNotLeftOut() {
+		cache.sent(1, "gazex=130");
+		cache.acknowledged(1, "gazex=130", status(1, 0, 0, 130));
+		cache.sent(2, "gazex=0");
+
+		assertEquals("gazex=130", cache.delta("gazex=130"));
+	}
+
+	public void testStatusOfAnotherControllerUpdatesTheMirror() {
+		cache.sent(1, "gazex=130");
+		cache.acknowledged(1, "gazex=130", status(1, 0, 0, 130));
+		cache.update(status(FaceStatus.NO_ID, 0, 0, -80));
+
+		assertEquals("gazex=130", cache.delta("gazex=130"));
+		assertEquals("-80", cache.get("gazex"));
+	}
+
+	public void testExpressionIsForgottenWhenTheMoodChanges() {
+		cache.sent(1, "expression=happy%50");
+		cache.acknowledged(1, "expression=happy%50", status(1, 6, 42, 0));
+		assertNull(cache.delta("expression=happy%50"));
+
+		cache.sent(2, "arousal=20");
+		cache.acknowledged(2, "arousal=20", status(2, 20, 42, 0));
+		assertEquals("expression=happy%50", cache.delta("expression=happy%50"));
+	}
+
+	public void testClear() {
+		cache.sent(1, "gazex=130");
+		cache.acknowledged(1, "gazex=130", status(1, 0, 0, 130));
+		cache.clear();
+
+		assertEquals("gazex=130", cache.delta("gazex=130"));
+		assertNull(cache.getLastStatus());
+	}
+
+}
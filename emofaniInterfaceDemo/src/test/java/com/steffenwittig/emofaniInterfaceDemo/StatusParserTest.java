@@ -0,0 +1,76 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for StatusParser.
+ */
+public class StatusParserTest extends TestCase {
+
+	private static ByteBuffer bytes(String message) {
+		return ByteBuffer.wrap(message.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	public void testOkStatus() {
+		FaceState state = new FaceState();
+		assertTrue(StatusParser.parse(bytes("status:OK;t:1424766709104;arousal:-71;pleasure:36;blush:20;gazex:130;"
+				+ "gazey:-80;gazez:250;talking:true;idle:False"), state));
+
+		assertTrue(state.isOk());
+		assertEquals(1424766709104L, state.getId());
+		assertEquals(-71, state.getArousal());
+		assertEquals(36, state.getPleasure());
+		assertEquals(20, state.getBlush());
+		assertEquals(130, state.getGazeX());
+		assertEquals(-80, state.getGazeY());
+		assertEquals(250, state.getGazeZ());
+		assertTrue(state.isTalking());
+		assertFalse(state.isIdle());
+		assertEquals(0, state.getMissingFields(FaceState.OK_FIELDS));
+		assertNull(state.getError());
+	}
+
+	public void testErrorStatus() {
+		FaceState state = new FaceState();
+		StatusParser.parse(bytes("status:ERROR;t:5;error:\"Expression error: key; not found \""), state);
+
+		assertFalse(state.isOk());
+		assertEquals(5, state.getId());
+		assertEquals("Expression error: key; not found ", state.getError());
+		assertEquals(FaceState.OK_FIELDS & ~FaceState.STATUS, state.getMissingFields(FaceState.OK_FIELDS));
+	}
+
+	public void testMissingAndInvalidFields() {
+		FaceState state = new FaceState();
+		StatusParser.parse(bytes("status:OK;arousal:abc;pleasure:;gazex:12;unknown:1;talking:maybe"), state);
+
+		assertEquals(FaceStatus.NO_ID, state.getId());
+		assertEquals(12, state.getGazeX());
+		assertEquals(FaceState.AROUSAL | FaceState.PLEASURE | FaceState.TALKING, state.getInvalidFields());
+		assertFalse(state.has(FaceState.AROUSAL));
+		assertEquals("arousal, pleasure, blush, gazey, gazez, talking, idle",
+				FaceState.describe(state.getMissingFields(FaceState.OK_FIELDS)));
+	}
+
+	public void testStateIsReused() {
+		FaceState state = new FaceState();
+		StatusParser.parse(bytes("status:OK;t:1;arousal:50"), state);
+		assertFalse(StatusParser.parse(bytes("arousal:10\0\0\0"), state));
+		assertEquals(10, state.getArousal());
+		assertEquals(FaceStatus.NO_ID, state.getId());
+		assertEquals(FaceState.AROUSAL, state.getFields());
+	}
+
+	public void testBufferIsNotMoved() {
+		ByteBuffer buffer = bytes("xxstatus:OK;gazez:3xx");
+		buffer.position(2).limit(buffer.limit() - 2);
+		FaceState state = new FaceState();
+		StatusParser.parse(buffer, state);
+		assertEquals(3, state.getGazeZ());
+		assertEquals(2, buffer.position());
+	}
+
+}
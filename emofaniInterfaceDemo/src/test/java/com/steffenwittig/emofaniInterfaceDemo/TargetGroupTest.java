@@ -0,0 +1,105 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+/**
+ * Sends to two EmofaniServers and a port that never answers.
+ */
+public class TargetGroupTest extends TestCase {
+
+	private EmofaniServer first, second;
+	private DatagramSocket dead;
+	private List<EmofaniClient> clients;
+
+	@Override
+	protected void setUp() throws Exception {
+		first = new EmofaniServer(0).start();
+		second = new EmofaniServer(0).start();
+		dead = new DatagramSocket(0);
+		clients = TargetGroup.parseTargets("127.0.0.1:" + first.getPort() + ", 127.0.0.1:" + second.getPort()
+				+ ",127.0.0.1:" + dead.getLocalPort(), EmofaniClient.builder().receivePort(0).timeout(500), 11000);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		first.close();
+		second.close();
+		dead.close();
+	}
+
+	public void testParseTargets() {
+		List<EmofaniClient> targets = TargetGroup.parseTargets("face1, face2:11002,", EmofaniClient.builder(), 11000);
+		assertEquals(2, targets.size());
+		assertEquals("face1", targets.get(0).getHost());
+		assertEquals(11000, targets.get(0).getSendPort());
+		assertEquals(11001, targets.get(0).getReceivePort());
+		assertEquals("face2", targets.get(1).getHost());
+		assertEquals(11002, targets.get(1).getSendPort());
+		assertEquals(0, targets.get(1).getReceivePort());
+	}
+
+	public void testAnyDoesntWaitForTheDeadTarget() throws Exception {
+		try (TargetGroup group = new TargetGroup(clients, TargetGroup.Mode.ANY)) {
+			long start = System.nanoTime();
+			TargetGroup.Result result = group.sendData("gazex=130").get(5, TimeUnit.SECONDS);
+			assertTrue(result.isSuccess());
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+			assertTrue(result.getStatus().isOk());
+		}
+	}
+
+	/**
+	 * Virtual sender threads where the JVM has them, platform threads otherwise
+	 */
+	public void testVirtualThreads() throws Exception {
+		try (TargetGroup group = new TargetGroup(clients.subList(0, 2), TargetGroup.Mode.ALL, ThreadMode.VIRTUAL)) {
+			TargetGroup.Result result = group.sendData("gazey=-80").get(5, TimeUnit.SECONDS);
+			assertTrue(result.isSuccess());
+			assertEquals(-80, second.getGazeY());
+		}
+		assertEquals(ThreadMode.VIRTUAL.isAvailable(), ThreadMode.VIRTUAL.resolve() == ThreadMode.VIRTUAL);
+		assertTrue(ThreadMode.PLATFORM.newThreadFactory("test").newThread(() -> {}).isDaemon());
+	}
+
+	public void testQuorumAndAll() throws Exception {
+		try (TargetGroup group = new TargetGroup(clients, TargetGroup.Mode.QUORUM)) {
+			TargetGroup.Result result = group.sendData("blush=30").get(5, TimeUnit.SECONDS);
+			assertTrue(result.isSuccess());
+			assertEquals(2, result.getRequired());
+			assertEquals(30, first.getBlush());
+			assertEquals(30, second.getBlush());
+		}
+
+		try (TargetGroup group = new TargetGroup(clients, TargetGroup.Mode.ALL)) {
+			TargetGroup.Result result = group.sendData("blush=40").get(5, TimeUnit.SECONDS);
+			assertFalse(result.isSuccess());
+			assertEquals(2, result.getOkCount());
+			assertEquals(1, result.getFailedCount());
+			assertTrue(result.getError(2) instanceof TimeoutException);
+			assertEquals(40, result.getStatus(1).getBlush());
+		}
+	}
+
+	/**
+	 * Data that doesn't fit into a message fails every target instead of leaving the result open
+	 */
+	public void testOversizeData() throws Exception {
+		StringBuilder data = new StringBuilder("gazex=1");
+		while (data.length() <= MessageEncoder.CAPACITY) {
+			data.append(",gazex=1");
+		}
+		try (TargetGroup group = new TargetGroup(clients, TargetGroup.Mode.ANY)) {
+			TargetGroup.Result result = group.sendData(data.toString()).get(5, TimeUnit.SECONDS);
+			assertFalse(result.isSuccess());
+			assertEquals(3, result.getFailedCount());
+			assertNotNull(result.getError(0));
+			assertTrue(clients.get(0).sendData(data.toString()).isCompletedExceptionally());
+		}
+	}
+
+}
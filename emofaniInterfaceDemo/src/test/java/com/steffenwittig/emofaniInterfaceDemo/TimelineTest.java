@@ -0,0 +1,92 @@
+package com.steffenwittig.emofaniInterfaceDemo;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for Timeline and ScenarioPlayer.
+ */
+public class TimelineTest extends TestCase {
+
+	private static Timeline parse(String text) throws IOException {
+		return Timeline.parse("test", new StringReader(text), resource -> 200);
+	}
+
+	public void testParse() throws IOException {
+		Timeline timeline = parse("# comment\n\n50 send gazex=130,gazey=-80\n0 play /hello.wav\nend+100 wait\n"
+				+ "0 send expression=happy%100\n");
+
+		assertEquals("[0 play /hello.wav, 0 send expression=happy%100, 50 send gazex=130,gazey=-80, 300 wait]",
+				timeline.getSteps().toString());
+		assertEquals(200, timeline.getSteps().get(0).getDuration());
+		assertEquals(300, timeline.getLength());
+	}
+
+	public void testLoadScenarios() throws IOException {
+		for (String name : Arrays.asList("introduction", "question", "error", "follow", "point")) {
+			Timeline timeline = Timeline.load("/scenarios/" + name + ".txt");
+			assertTrue(name, timeline.getLength() > 500);
+		}
+	}
+
+	public void testInvalidStep() {
+		for (String step : Arrays.asList("0 jump", "x send gazex=1", "0 send", "-5 wait", "0 wait 5")) {
+			try {
+				parse(step);
+				fail(step);
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("line 1"));
+			}
+		}
+	}
+
+	public void testPlayAndPreempt() throws Exception {
+		final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+		final List<Runnable> playing = Collections.synchronizedList(new ArrayList<Runnable>());
+		ScenarioPlayer player = new ScenarioPlayer(new ScenarioPlayer.Output() {
+			@Override
+			public void send(String data) {
+				calls.add(data);
+			}
+
+			@Override
+			public void play(String resource, Runnable stopped) {
+				calls.add("play " + resource);
+				playing.add(stopped);
+			}
+
+			@Override
+			public void stop() {
+				calls.add("stop");
+				for (Runnable stopped : playing) {
+					stopped.run();
+				}
+				playing.clear();
+			}
+		});
+
+		player.play(parse("0 send expression=sad%100\n0 play /a.wav\nend send expression=sad%60"));
+		assertTrue(player.isRunning());
+		Thread.sleep(100);
+		// the clip ends
+		playing.remove(0).run();
+		Thread.sleep(300);
+		assertFalse(player.isRunning());
+		assertEquals("[expression=sad%100, talking=true, play /a.wav, talking=false, expression=sad%60]",
+				calls.toString());
+
+		calls.clear();
+		player.play(parse("0 play /a.wav\n1000 send expression=sad%60"));
+		Thread.sleep(100);
+		player.play(parse("0 send expression=happy%50"));
+		Thread.sleep(100);
+		assertEquals("[talking=true, play /a.wav, stop, talking=false, expression=happy%50]", calls.toString());
+	}
+
+}
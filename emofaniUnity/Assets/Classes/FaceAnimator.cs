@@ -16,9 +16,14 @@ public class FaceAnimator : EmofaniGlobal
 	public const int fallbackSendPort = 11001;
 	public string hostname = "";
 	private float arousal, pleasure, blush, gazeXEyes, gazeYEyes, gazeZEyes, gazeXHead, gazeYHead, gazeZHead,
-		eyeRandX, eyeRandY, idleTime, idleChangeTime, verticalHeadMovement = .5f, horizontalHeadMovement = .5f;
+		eyeRandX, eyeRandY, idleTime, idleChangeTime, verticalHeadMovement = .5f, horizontalHeadMovement = .5f,
+		mouth = 1;
 	private int targetArousal, targetPleasure, targetBlush, targetGazeX, targetGazeY, targetGazeZ = 250, sendPort = -1;
+	// mouth openness 0 to 100 streamed while talking, -1 plays the talking animation at full weight
+	private int targetMouth = -1;
 	private long lastInputId;
+	// sends status messages back on the TCP connection of the last message, null for UDP
+	private Action<string> reply;
 	private bool talking, idle, mirrorGaze;
 	private Vector3 lookAtEyes;
 	private Transform leftEyeBone, rightEyeBone, headBone, focusPoint;
@@ -76,12 +81,27 @@ public class FaceAnimator : EmofaniGlobal
 	/// <param name="message">Message.</param>
 	public void HandleMessage(string message)
 	{
+		HandleMessage(message, null);
+	}
+
+	/// <summary>
+	/// Interprets a message string and, if successful, sets the contained parameters. The response and the following
+	/// status messages are sent with reply, e.g. on the TCP connection the message came from. If reply is null, they
+	/// are sent via UDP like in HandleMessage(string).
+	/// </summary>
+	/// <param name="message">Message.</param>
+	/// <param name="reply">Sends a status message, or null.</param>
+	public void HandleMessage(string message, Action<string> reply)
+	{
+		this.reply = reply;
 
 		Debug.Log ("Input:" + message);
 
+		// id of the message, echoed in the status so the client can match it to its request
+		long timestamp = -1;
+
 		try {
 
-			long timestamp = 0;
 			string inputError = "";
 
 			// transform message string to dictionary
@@ -129,54 +149,94 @@ public class FaceAnimator : EmofaniGlobal
 				throw new Exception(inputError);
 			}
 
-			// Interpret data part of the message
-			string[] nameValue = input ["d"].Split('=');
-			string key = nameValue [0];
-			string value = nameValue [1];
+			// Interpret data part of the message. It can contain several key=value pairs separated by commas, which
+			// are applied together: if one of them fails, none of them will be applied.
+			string[] pairs = input ["d"].Split(',');
+
+			// remember the current targets to roll back a batch that contains an error
+			int[] targets = { targetArousal, targetPleasure, targetBlush, targetGazeX, targetGazeY, targetGazeZ,
+				targetMouth };
+			bool wasTalking = talking, wasIdle = idle;
 
 			// idle will be set to false for every message to exit idle mode if a new parameter is sent. 
 			// it will only be activated if the key is "idle" and the value "true"
 			Idle = false;
 
-			switch (key) {
-				case "arousal":
-					targetArousal = int.Parse(value);
-					break;
-				case "pleasure":
-					targetPleasure = int.Parse(value);
-					break;
-				case "gazex":
-					targetGazeX = int.Parse(value);
-					break;
-				case "gazey":
-					targetGazeY = int.Parse(value);
-					break;
-				case "gazez":
-					targetGazeZ = int.Parse(value);
-					break;
-                case "blush":
-                    targetBlush = int.Parse(value);
-                    break;
-				case "expression":
-					SetExpression(value);
-					break;
-				case "talking":
-					Talking = bool.Parse(value);
-					break;
-				case "idle":
-					Idle = bool.Parse(value);
-					break;
-				default:
-					throw new Exception("Unknown parameter \"" + key + "\"");
+			try {
+				foreach (string pair in pairs) {
+					string[] nameValue = pair.Split('=');
+					if (nameValue.Length != 2) {
+						throw new Exception("Malformed data \"" + pair + "\"");
+					}
+					SetParameter(nameValue [0], nameValue [1]);
+				}
+			} catch (Exception) {
+				targetArousal = targets [0];
+				targetPleasure = targets [1];
+				targetBlush = targets [2];
+				targetGazeX = targets [3];
+				targetGazeY = targets [4];
+				targetGazeZ = targets [5];
+				Talking = wasTalking;
+				targetMouth = targets [6];
+				idle = wasIdle;
+				throw;
 			}
 
 			// everything was OK. Set new timestamp and send OK status.
 			lastInputId = timestamp;
-			SendOkStatus();
+			SendOkStatus(timestamp);
 
 		} catch (Exception e) {
 			// something went wrong. Send an error message with the problem.
-			SendErrorStatus(e.Message);
+			SendErrorStatus(timestamp, e.Message);
+		}
+	}
+
+	/// <summary>
+	/// Sets the target of a single parameter.
+	/// </summary>
+	/// <param name="key">Name of the parameter.</param>
+	/// <param name="value">Value of the parameter.</param>
+	private void SetParameter(string key, string value)
+	{
+		switch (key) {
+			case "arousal":
+				targetArousal = int.Parse(value);
+				break;
+			case "pleasure":
+				targetPleasure = int.Parse(value);
+				break;
+			case "gazex":
+				targetGazeX = int.Parse(value);
+				break;
+			case "gazey":
+				targetGazeY = int.Parse(value);
+				break;
+			case "gazez":
+				targetGazeZ = int.Parse(value);
+				break;
+            case "blush":
+                targetBlush = int.Parse(value);
+                break;
+			case "expression":
+				SetExpression(value);
+				break;
+			case "talking":
+				Talking = bool.Parse(value);
+				break;
+			case "mouth":
+				int openness = int.Parse(value);
+				if (openness < 0 || openness > 100) {
+					throw new Exception("mouth has to be between 0 and 100");
+				}
+				targetMouth = openness;
+				break;
+			case "idle":
+				Idle = bool.Parse(value);
+				break;
+			default:
+				throw new Exception("Unknown parameter \"" + key + "\"");
 		}
 	}
 
@@ -275,6 +335,15 @@ public class FaceAnimator : EmofaniGlobal
 		gazeYHead = Mathf.Lerp(gazeYHead, (float)targetGazeY, gazeTHead);
 		gazeZHead = Mathf.Lerp(gazeZHead, (float)targetGazeZ, gazeTHead);
 
+		// Mouth (weight of the Talking layer). The openness is streamed many times per second from the amplitude of
+		// the speech, so it follows quickly; without it the talking animation plays at full weight.
+		int talkingLayer = anim.GetLayerIndex("Talking");
+		if (talkingLayer >= 0) {
+			float mouthTarget = (talking && targetMouth >= 0) ? targetMouth / 100f : 1;
+			mouth = Mathf.Lerp(mouth, mouthTarget, Time.deltaTime * 20);
+			anim.SetLayerWeight(talkingLayer, mouth);
+		}
+
 	}
 
 	/// <summary>
@@ -317,6 +386,9 @@ public class FaceAnimator : EmofaniGlobal
 		}
 		set {
 			talking = value;
+			if (!value) {
+				targetMouth = -1;
+			}
 			SetBool("talking", value);
 		}
 	}
@@ -343,7 +415,7 @@ public class FaceAnimator : EmofaniGlobal
 			targetGazeY = UnityEngine.Random.Range(-25, 25);
 			targetGazeZ = UnityEngine.Random.Range(200, 350);
 
-			SendOkStatus(); // in case a client application is listening -> let it know about the change
+			SendOkStatus(-1); // in case a client application is listening -> let it know about the change
 		}
 	}
 
@@ -422,10 +494,12 @@ public class FaceAnimator : EmofaniGlobal
 	/// <summary>
 	/// Forms an OK status message and sends it
 	/// </summary>
-	private void SendOkStatus()
+	/// <param name="id">Id (t) of the message this status answers, -1 if the status was not caused by a message.</param>
+	private void SendOkStatus(long id)
 	{
 
 		string message = "status:OK;";
+		message += StatusId(id);
 		message += "arousal:" + targetArousal + ";";
 		message += "pleasure:" + targetPleasure + ";";
         message += "blush:" + targetBlush + ";";
@@ -441,22 +515,39 @@ public class FaceAnimator : EmofaniGlobal
 	/// <summary>
 	/// Forms an Error status message and sends it.
 	/// </summary>
+	/// <param name="id">Id (t) of the message this status answers, -1 if it couldn't be read.</param>
 	/// <param name="error">Error.</param>
-	private void SendErrorStatus(string error)
+	private void SendErrorStatus(long id, string error)
 	{
 
 		string message = "status:ERROR;";
+		message += StatusId(id);
 		message += "error:\"" + error + "\"";
 
 		SendStatus(message);
 	}
 
+	/// <summary>
+	/// Returns the t segment of a status message or an empty string if there's no id to answer to.
+	/// </summary>
+	/// <param name="id">Id (t) of the message the status answers.</param>
+	private string StatusId(long id)
+	{
+		return (id >= 0) ? "t:" + id + ";" : "";
+	}
+
 	/// <summary>
 	/// Sends the a status response message to the (previously set) receipient
 	/// </summary>
 	/// <param name="message">Message.</param>
 	private void SendStatus(string message)
 	{
+		if (reply != null) {
+			reply(message);
+			GuiScript.Log("Sent \"" + message + "\" on TCP connection");
+			return;
+		}
+
 		Socket sock = new Socket(AddressFamily.InterNetwork, SocketType.Dgram, ProtocolType.Udp);
 
 		IPAddress serverAddr = IPAddress.Parse(hostname);
@@ -0,0 +1,224 @@
+﻿using UnityEngine;
+using System;
+using System.Collections.Generic;
+using System.Net;
+using System.Net.Sockets;
+using System.Text;
+using System.Threading;
+
+/// <summary>
+/// Accepts TCP connections on the same port as the UdpListener. Every message is preceded by its length as a 4 byte
+/// big endian integer. Status messages are sent back the same way on the connection the message came from, in the
+/// order of the messages, instead of to the s and p of the message.
+/// </summary>
+public class TcpMessageListener : EmofaniGlobal
+{
+
+	/// <summary>
+	/// Longest message that is accepted, anything longer means the stream is out of step.
+	/// </summary>
+	private const int MaxFrameLength = 64 * 1024;
+
+	/// <summary>
+	/// A received message and the function that sends a status message back on its connection
+	/// </summary>
+	private struct Request
+	{
+		public string Message;
+		public Action<string> Reply;
+	}
+
+	private Thread listenerThread;
+	private TcpListener listener;
+	private int port = 11000;
+	private readonly Queue<Request> requests = new Queue<Request>();
+	private readonly List<TcpClient> clients = new List<TcpClient>();
+
+	/// <summary>
+	/// Gets or sets the port to accept connections on
+	/// </summary>
+	/// <value>The port.</value>
+	public int Port {
+		get {
+			return this.port;
+		}
+		set {
+			if (value != port) {
+				port = value;
+				if (listenerThread != null) {
+					Close();
+					StartListening();
+				}
+			}
+		}
+	}
+
+	/// <summary>
+	/// Starts a thread that accepts connections. Closes the previous listener and its connections if there is one.
+	/// </summary>
+	public void StartListening()
+	{
+		Debug.Log("Starting TCP Listener on Port " + port);
+
+		if (listenerThread != null) {
+			Close();
+		}
+
+		listener = new TcpListener(IPAddress.Any, port);
+		listenerThread = new Thread(new ThreadStart(Accept));
+		listenerThread.IsBackground = true;
+		listenerThread.Start();
+	}
+
+	private void Start()
+	{
+		if (Listener != null) {
+			port = Listener.ReceivePort;
+		}
+		StartListening();
+	}
+
+	/// <summary>
+	/// Passes the received messages to the FaceAnimator, together with their connection to answer on.
+	/// </summary>
+	private void Update()
+	{
+		while (true) {
+			Request request;
+			lock (requests) {
+				if (requests.Count == 0) {
+					return;
+				}
+				request = requests.Dequeue();
+			}
+			try {
+				GuiScript.Log(request.Message);
+				FaceAnim.HandleMessage(request.Message, request.Reply);
+			} catch (Exception e) {
+				Debug.Log(e.Message + ":" + e.StackTrace);
+			}
+		}
+	}
+
+	/// <summary>
+	/// Accepts connections until the listener is stopped. Every connection is read by a thread of its own.
+	/// </summary>
+	private void Accept()
+	{
+		try {
+			listener.Start();
+			while (true) {
+				TcpClient client = listener.AcceptTcpClient();
+				client.NoDelay = true;
+				lock (clients) {
+					clients.Add(client);
+				}
+				Thread reader = new Thread(() => Read(client));
+				reader.IsBackground = true;
+				reader.Start();
+			}
+		} catch (Exception e) {
+			Debug.Log(e.ToString());
+		}
+	}
+
+	/// <summary>
+	/// Reads messages from a connection until it is closed and puts them into the queue.
+	/// </summary>
+	/// <param name="client">The connection.</param>
+	private void Read(TcpClient client)
+	{
+		try {
+			NetworkStream stream = client.GetStream();
+			byte[] header = new byte[4];
+			Action<string> reply = status => Reply(client, stream, status);
+
+			while (ReadFully(stream, header, 4)) {
+				int length = (header [0] << 24) | (header [1] << 16) | (header [2] << 8) | header [3];
+				if (length < 0 || length > MaxFrameLength) {
+					throw new Exception("Invalid frame length " + length);
+				}
+				byte[] bytes = new byte[length];
+				if (!ReadFully(stream, bytes, length)) {
+					break;
+				}
+				string message = Encoding.ASCII.GetString(bytes, 0, length);
+				lock (requests) {
+					requests.Enqueue(new Request { Message = message, Reply = reply });
+				}
+			}
+		} catch (Exception e) {
+			Debug.Log(e.Message);
+		} finally {
+			lock (clients) {
+				clients.Remove(client);
+			}
+			client.Close();
+		}
+	}
+
+	/// <summary>
+	/// Reads a number of bytes.
+	/// </summary>
+	/// <returns><c>false</c> if the connection was closed first.</returns>
+	private static bool ReadFully(NetworkStream stream, byte[] buffer, int length)
+	{
+		int offset = 0;
+		while (offset < length) {
+			int read = stream.Read(buffer, offset, length - offset);
+			if (read <= 0) {
+				return false;
+			}
+			offset += read;
+		}
+		return true;
+	}
+
+	/// <summary>
+	/// Sends a status message with its length on a connection. Does nothing if the connection has been closed.
+	/// </summary>
+	private static void Reply(TcpClient client, NetworkStream stream, string status)
+	{
+		byte[] bytes = Encoding.ASCII.GetBytes(status);
+		byte[] frame = new byte[bytes.Length + 4];
+		frame [0] = (byte)(bytes.Length >> 24);
+		frame [1] = (byte)(bytes.Length >> 16);
+		frame [2] = (byte)(bytes.Length >> 8);
+		frame [3] = (byte)bytes.Length;
+		Array.Copy(bytes, 0, frame, 4, bytes.Length);
+		try {
+			lock (client) {
+				stream.Write(frame, 0, frame.Length);
+			}
+		} catch (Exception e) {
+			Debug.Log(e.Message);
+		}
+	}
+
+	/// <summary>
+	/// Stops accepting connections and closes the open ones.
+	/// </summary>
+	private void Close()
+	{
+		try {
+			if (listener != null) {
+				listener.Stop();
+			}
+			lock (clients) {
+				foreach (TcpClient client in clients) {
+					client.Close();
+				}
+				clients.Clear();
+			}
+		} catch (Exception e) {
+			Debug.Log(e.Message);
+		}
+		listenerThread = null;
+	}
+
+	private void OnDestroy()
+	{
+		Close();
+	}
+
+}
@@ -17,6 +17,7 @@ public class UdpListener : EmofaniGlobal
 	private UdpClient listener;
 	private int receivePort = 11000;
 	private List<string> messages;
+	private TcpMessageListener tcp;
 
 	/// <summary>
 	/// Gets or sets the port to listen on
@@ -33,6 +34,9 @@ public class UdpListener : EmofaniGlobal
 					Close();
 					StartListening();
 				}
+				if (tcp != null) {
+					tcp.Port = value;
+				}
 			}
 		}
 	}
@@ -65,7 +69,8 @@ public class UdpListener : EmofaniGlobal
 
 
 	/// <summary>
-	/// Start this instance. Automatically begins to listen to the default port.
+	/// Start this instance. Automatically begins to listen to the default port, and adds a TcpMessageListener for
+	/// TCP connections to the same port.
 	/// </summary>
 	private void Start()
 	{
@@ -75,6 +80,8 @@ public class UdpListener : EmofaniGlobal
 		messages = new List<string>();
 		
 		StartListening();
+
+		tcp = gameObject.AddComponent<TcpMessageListener>();
 	}
 
 	/// <summary>